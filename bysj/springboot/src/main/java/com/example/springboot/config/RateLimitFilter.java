@@ -0,0 +1,227 @@
+package com.example.springboot.config;
+
+import com.example.springboot.common.Result;
+import com.example.springboot.util.JwtUtil;
+import com.example.springboot.util.TokenBucketRateLimiter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * 限流过滤器
+ * 在JWT认证之前执行，超出限制的请求直接返回429，不会触达数据库
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    @Autowired
+    private TokenBucketRateLimiter rateLimiter;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled() || properties.getRules().isEmpty()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest currentRequest = request;
+        String requestUri = request.getRequestURI();
+        for (RateLimitProperties.Rule rule : properties.getRules()) {
+            if (!matches(rule, request.getMethod(), requestUri)) {
+                continue;
+            }
+            // 按用户名限流需要读取请求体，缓存后交给后续处理继续读取，超出上限的请求不再读取
+            if ("username".equals(rule.getKey()) && !(currentRequest instanceof CachedBodyRequest)) {
+                CachedBodyRequest cached = CachedBodyRequest.read(request, properties.getMaxBodyBytes());
+                if (cached == null) {
+                    logger.warn("请求体超出限流读取上限，路径: " + requestUri);
+                    reject(response, 413, "请求体过大");
+                    return;
+                }
+                currentRequest = cached;
+            }
+            String key = resolveKey(rule, currentRequest);
+            long retryAfterMillis = rateLimiter.tryAcquire(rule, key);
+            if (retryAfterMillis > 0) {
+                logger.warn("请求被限流，规则: " + rule.getName() + "，维度: " + key + "，路径: " + requestUri);
+                response.setHeader("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+                reject(response, 429, "请求过于频繁，请稍后再试");
+                return;
+            }
+        }
+
+        filterChain.doFilter(currentRequest, response);
+    }
+
+    private boolean matches(RateLimitProperties.Rule rule, String method, String requestUri) {
+        if (rule.getMethod() != null && !rule.getMethod().equalsIgnoreCase(method)) {
+            return false;
+        }
+        return PATH_MATCHER.match(rule.getPath(), requestUri);
+    }
+
+    // 取不到指定维度时退回按IP计数
+    private String resolveKey(RateLimitProperties.Rule rule, HttpServletRequest request) {
+        if ("username".equals(rule.getKey())) {
+            String username = extractUsername((CachedBodyRequest) request);
+            if (username != null) {
+                return "username:" + username;
+            }
+        } else if ("userId".equals(rule.getKey())) {
+            String userId = extractUserId(request);
+            if (userId != null) {
+                return "userId:" + userId;
+            }
+        }
+        return "ip:" + clientIp(request);
+    }
+
+    private String extractUsername(CachedBodyRequest request) {
+        if (request.body.length == 0) {
+            return null;
+        }
+        try {
+            JsonNode username = objectMapper.readTree(request.body).get("username");
+            if (username != null && username.isTextual() && !username.asText().isBlank()) {
+                // 用户名不区分大小写，避免通过变换大小写绕过限流
+                return username.asText().strip().toLowerCase(Locale.ROOT);
+            }
+        } catch (IOException e) {
+            logger.debug("请求体不是有效的JSON，按IP限流");
+        }
+        return null;
+    }
+
+    private String extractUserId(HttpServletRequest request) {
+        String authorizationHeader = request.getHeader("Authorization");
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return null;
+        }
+        try {
+            Claims claims = jwtUtil.parseToken(authorizationHeader.substring(7));
+            Object userId = claims.get("userId");
+            return userId != null ? jwtUtil.extractRealm(claims) + ":" + userId : null;
+        } catch (Exception e) {
+            // 无效令牌交给JWT过滤器处理
+            return null;
+        }
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        if (properties.isTrustForwardedFor()) {
+            String forwardedFor = request.getHeader("X-Forwarded-For");
+            if (forwardedFor != null && !forwardedFor.isBlank()) {
+                int comma = forwardedFor.indexOf(',');
+                return (comma > 0 ? forwardedFor.substring(0, comma) : forwardedFor).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(objectMapper.writeValueAsString(Result.error(status, message)));
+    }
+
+    /**
+     * 缓存请求体的请求包装，请求体可以被重复读取
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        /**
+         * 读取并缓存请求体，最多读取maxBytes + 1字节
+         * @return 请求体超出maxBytes时返回null
+         */
+        private static CachedBodyRequest read(HttpServletRequest request, int maxBytes) throws IOException {
+            if (request.getContentLengthLong() > maxBytes) {
+                return null;
+            }
+            // Content-Length缺失（分块传输）时按实际读取的长度判断
+            byte[] body = request.getInputStream().readNBytes(maxBytes + 1);
+            return body.length > maxBytes ? null : new CachedBodyRequest(request, body);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return inputStream.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return inputStream.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return inputStream.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.springboot.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 限流配置
+ * 每条规则按请求方法和路径匹配，按指定维度（IP、用户名、用户ID）分别计数
+ */
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+@Data
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // 是否信任X-Forwarded-For头部获取客户端IP，仅在反向代理之后部署时开启
+    private boolean trustForwardedFor = false;
+
+    // Redis调用失败后改用本地限流的时长（毫秒），期间不再访问Redis
+    private long fallbackMillis = 5000;
+
+    // 按用户名限流时读取的请求体上限（字节），超出时直接返回413，不再缓存整个请求体
+    private int maxBodyBytes = 4096;
+
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Rule {
+        // 规则名称，作为Redis键的一部分
+        private String name;
+        // 请求方法，为空时匹配所有方法
+        private String method;
+        // 路径，支持Ant风格通配符
+        private String path;
+        // 计数维度：ip、username、userId
+        private String key = "ip";
+        // 桶容量，即允许的突发请求数
+        private int capacity = 10;
+        // 每秒补充的令牌数
+        private double refillPerSecond = 1;
+    }
+}
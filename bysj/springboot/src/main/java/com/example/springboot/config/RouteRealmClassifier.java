@@ -0,0 +1,197 @@
+package com.example.springboot.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 请求路径到认证域的分类器
+ * 启动时把路由规则构建成按路径段索引的前缀树，每个请求只需沿路径段走一遍即可得到认证域，
+ * 不再逐条执行startsWith/equals/正则匹配
+ */
+@Component
+public class RouteRealmClassifier {
+
+    /**
+     * 认证域
+     */
+    public enum Realm {
+        // 允许匿名访问，跳过JWT验证
+        ANONYMOUS,
+        // 普通用户，使用userDetailsService
+        USER,
+        // 管理员，使用adminDetailsService
+        ADMIN,
+        // 普通用户和管理员共享，先按普通用户加载，不存在时再按管理员加载
+        SHARED
+    }
+
+    // 允许匿名访问的路径列表，SecurityConfig也使用该列表，保证两边一致
+    public static final String[] ANONYMOUS_PATHS = {
+            "/api/user/login",
+            "/api/user/register",
+            "/api/admins/login",
+            "/api/user/check-username",
+            "/api/user/verify-phone",
+            "/api/user/reset-password",
+            "/api/payments/alipay/*/status"
+    };
+
+    private final Node root = new Node();
+
+    public RouteRealmClassifier() {
+        for (String path : ANONYMOUS_PATHS) {
+            exact(path, Realm.ANONYMOUS);
+        }
+
+        // 普通用户支付宝支付、余额支付相关路径
+        prefix("/api/alipay/pay", Realm.USER);
+        prefix("/api/alipay/status", Realm.USER);
+        prefix("/api/payments", Realm.USER);
+        // 普通用户修改自己的信息、查看自己的订单记录
+        exact("/api/user/self", Realm.USER);
+        prefix("/api/usage-records/self", Realm.USER);
+        prefix("/api/usage-records/user", Realm.USER);
+        exact("/api/usage-records/user", Realm.ADMIN);
+
+        // 普通用户和管理员都可以访问的路径
+        exact("/api/stores", Realm.SHARED);
+        exact("/api/usage-records", Realm.SHARED);
+        exact("/api/rooms", Realm.SHARED);
+        prefix("/api/rooms/available", Realm.SHARED);
+        prefix("/api/rooms/store", Realm.SHARED);
+        exact("/api/rooms/store", Realm.ADMIN);
+        // 房间状态更新，支持普通用户和管理员
+        exact("/api/rooms/{id}/status", Realm.SHARED);
+        exact("/api/rooms/*/status", Realm.USER);
+
+        // 管理员相关路径
+        prefix("/api/admins", Realm.ADMIN);
+        exact("/api/user/all", Realm.ADMIN);
+        exact("/api/user", Realm.ADMIN);
+        prefix("/api/rooms", Realm.ADMIN);
+        prefix("/api/usage-records", Realm.ADMIN);
+    }
+
+    /**
+     * 对请求路径进行分类
+     * @param requestUri 请求路径
+     * @return 认证域，未命中任何规则时默认为普通用户
+     */
+    public Realm classify(String requestUri) {
+        Node node = root;
+        Realm matched = root.prefix;
+        int length = requestUri.length();
+        if (length == 0 || requestUri.charAt(0) != '/') {
+            return matched != null ? matched : Realm.USER;
+        }
+        // 路径段之间以单个/分隔，空路径段（连续的/或末尾的/）不匹配任何规则，
+        // 与原实现的equals/startsWith判断一致，//api/user/login、/api/user/login/不会被当作匿名路径
+        int start = 1;
+        while (true) {
+            int end = requestUri.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            Node next = start < end ? node.child(requestUri, start, end) : null;
+            if (next == null) {
+                // 没有更具体的规则，使用最近一次命中的前缀规则
+                return matched != null ? matched : Realm.USER;
+            }
+            node = next;
+            if (node.prefix != null) {
+                matched = node.prefix;
+            }
+            if (end == length) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (node.exact != null) {
+            return node.exact;
+        }
+        return matched != null ? matched : Realm.USER;
+    }
+
+    /**
+     * 检查请求路径是否允许匿名访问
+     * @param requestUri 请求路径
+     * @return 是否允许匿名访问
+     */
+    public boolean isAnonymous(String requestUri) {
+        return classify(requestUri) == Realm.ANONYMOUS;
+    }
+
+    // 精确匹配规则，优先于同一节点上的前缀规则
+    private void exact(String path, Realm realm) {
+        Node node = insert(path);
+        if (node.exact == null) {
+            node.exact = realm;
+        }
+    }
+
+    // 前缀匹配规则，作用于该节点及其所有子路径
+    private void prefix(String path, Realm realm) {
+        Node node = insert(path);
+        if (node.prefix == null) {
+            node.prefix = realm;
+        }
+    }
+
+    private Node insert(String path) {
+        Node node = root;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if ("{id}".equals(segment)) {
+                if (node.numericChild == null) {
+                    node.numericChild = new Node();
+                }
+                node = node.numericChild;
+            } else if ("*".equals(segment)) {
+                if (node.anyChild == null) {
+                    node.anyChild = new Node();
+                }
+                node = node.anyChild;
+            } else {
+                node = node.children.computeIfAbsent(segment, key -> new Node());
+            }
+        }
+        return node;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        // 匹配纯数字路径段，如房间ID
+        private Node numericChild;
+        // 匹配任意单个路径段
+        private Node anyChild;
+        private Realm exact;
+        private Realm prefix;
+
+        private Node child(String uri, int start, int end) {
+            if (!children.isEmpty()) {
+                Node child = children.get(uri.substring(start, end));
+                if (child != null) {
+                    return child;
+                }
+            }
+            if (numericChild != null && isDigits(uri, start, end)) {
+                return numericChild;
+            }
+            return anyChild;
+        }
+
+        private static boolean isDigits(String uri, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = uri.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.springboot.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
@@ -33,22 +34,19 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(AbstractHttpConfigurer::disable)
             .authorizeHttpRequests(auth -> auth
-                // 允许未登录访问的路径
-                .requestMatchers(
-                    "/api/user/login", 
-                    "/api/user/register",
-                    "/api/admins/login",
-                    "/api/user/check-username",
-                    "/api/user/verify-phone",
-                    "/api/user/reset-password",
-                    "/api/payments/alipay/*/status"
-                ).permitAll()
+                // SSE等异步请求的后续分派已在首次请求时完成认证
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                // 允许未登录访问的路径，与JwtAuthenticationFilter共用同一份列表
+                .requestMatchers(RouteRealmClassifier.ANONYMOUS_PATHS).permitAll()
                 .requestMatchers("/api/**").authenticated()
 
                 // 其他所有请求需要认证
@@ -59,7 +57,9 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
             )
             // 添加JWT过滤器
-            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+            // 限流在JWT认证之前执行，超限请求不做任何数据库查询
+            .addFilterBefore(rateLimitFilter, JwtAuthenticationFilter.class);
 
         return http.build();
     }
@@ -3,14 +3,22 @@ package com.example.springboot.controller;
 import com.example.springboot.common.Result;
 import com.example.springboot.model.Admin;
 import com.example.springboot.service.AdminService;
+import com.example.springboot.service.PresenceService;
+import com.example.springboot.util.JwtKeyRing;
+import com.example.springboot.util.JwtUtil;
+import com.example.springboot.util.TaggedCache;
+import com.example.springboot.util.TokenRevocationStore;
+import io.jsonwebtoken.Claims;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @RestController
@@ -21,32 +29,28 @@ public class AdminController {
     @Autowired
     private AdminService adminService;
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private TaggedCache taggedCache;
+    @Autowired
+    private PresenceService presenceService;
+    @Autowired
+    private JwtUtil jwtUtil;
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+    @Autowired
+    private JwtKeyRing jwtKeyRing;
     @GetMapping
     @Operation(summary = "获取所有管理员信息", description = "获取系统中所有管理员的信息列表")
     //获取所有管理员信息
     public Result<List<Admin>> findAll() {
-        String key = "admins:all";
-        redisTemplate.delete(key);
-        List<Admin> admins = (List<Admin>) redisTemplate.opsForValue().get(key);
-        if (admins == null) {
-            admins = adminService.findAll();
-            redisTemplate.opsForValue().set(key, admins, 1, TimeUnit.HOURS);
-        }
-        return Result.success(admins);
+        // 管理页面需要最新数据，直接查询不缓存
+        return Result.success(adminService.findAll());
     }
 
     @GetMapping("/{id}")
     @Operation(summary = "根据ID获取管理员信息", description = "根据管理员ID获取详细信息")
     public Result<Admin> findById(@Parameter(description = "管理员ID") @PathVariable Integer id) {
-        String key = "admins:id:" + id;
-        Admin admin = (Admin) redisTemplate.opsForValue().get(key);
-        if (admin == null) {
-            admin = adminService.findById(id);
-            if (admin != null) {
-                redisTemplate.opsForValue().set(key, admin, 1, TimeUnit.HOURS);
-            }
-        }
+        Admin admin = taggedCache.getOrLoad("admins:id:" + id, 1, TimeUnit.HOURS,
+                () -> adminService.findById(id), TaggedCache.admin(id));
         return Result.success(admin);
     }
 
@@ -61,8 +65,6 @@ public class AdminController {
     public Result<Integer> save(@RequestBody Admin admin) {
         int result = adminService.save(admin);
         if (result > 0) {
-            // 清除相关缓存
-            redisTemplate.delete("admins:all");
             return Result.success(result);
         }
         return Result.error("保存失败");
@@ -74,12 +76,8 @@ public class AdminController {
     public Result<Integer> update(@RequestBody Admin admin) {
         int result = adminService.update(admin);
         if (result > 0) {
-            // 清除相关缓存
-            redisTemplate.delete("admins:all");
-            redisTemplate.delete("admins:id:" + admin.getAdminId());
-            if (admin.getUsername() != null) {
-                redisTemplate.delete("admins:username:" + admin.getUsername());
-            }
+            // 清除该管理员的全部缓存，用户名被修改时旧用户名的缓存也一起清除
+            taggedCache.invalidate(TaggedCache.admin(admin.getAdminId()));
             return Result.success(result);
         }
         return Result.error("更新失败");
@@ -88,16 +86,10 @@ public class AdminController {
     @DeleteMapping("/{id}")
     @Operation(summary = "删除管理员", description = "根据ID删除管理员账号")
     public Result<Integer> delete(@Parameter(description = "管理员ID") @PathVariable Integer id) {
-        // 先获取要删除的管理员信息，用于清除缓存
-        Admin adminToDelete = adminService.findById(id);
         int result = adminService.delete(id);
         if (result > 0) {
-            // 清除相关缓存
-            redisTemplate.delete("admins:all");
-            redisTemplate.delete("admins:id:" + id);
-            if (adminToDelete != null && adminToDelete.getUsername() != null) {
-                redisTemplate.delete("admins:username:" + adminToDelete.getUsername());
-            }
+            // 清除该管理员的全部缓存
+            taggedCache.invalidate(TaggedCache.admin(id));
             return Result.success(result);
         }
         return Result.error("删除失败");
@@ -111,18 +103,69 @@ public class AdminController {
     //管理员退出登录接口
     @PostMapping("/logout/{id}")
     @Operation(summary = "管理员退出登录", description = "管理员退出登录，清除登录状态")
-    public Result<Void> logout(@Parameter(description = "管理员ID") @PathVariable Integer id) {
+    public Result<Void> logout(@Parameter(description = "管理员ID") @PathVariable Integer id,
+                               @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        // 吊销当前令牌，退出后不能再使用
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            try {
+                Claims claims = jwtUtil.parseToken(authHeader.substring(7));
+                tokenRevocationStore.revoke(claims);
+            } catch (Exception e) {
+                // 令牌无效或已过期，无需吊销
+            }
+        }
         adminService.logout(id);
         System.out.println(id);
         return Result.success();
     }
 
+    @GetMapping("/online/count")
+    @Operation(summary = "获取在线人数", description = "从在线索引统计当前在线的用户或管理员数量")
+    public Result<Long> countOnline(@Parameter(description = "认证域：user或admin") @RequestParam(defaultValue = JwtUtil.REALM_USER) String realm) {
+        if (!JwtUtil.REALM_USER.equals(realm) && !JwtUtil.REALM_ADMIN.equals(realm)) {
+            return Result.error("认证域无效");
+        }
+        return Result.success(presenceService.countOnline(realm));
+    }
+
+    @GetMapping("/online")
+    @Operation(summary = "分页获取在线账号", description = "从在线索引按最近活跃时间倒序分页获取在线的用户或管理员")
+    public Result<Map<String, Object>> pageOnline(
+            @Parameter(description = "认证域：user或admin") @RequestParam(defaultValue = JwtUtil.REALM_USER) String realm,
+            @Parameter(description = "页码") @RequestParam(defaultValue = "1") int page,
+            @Parameter(description = "每页大小") @RequestParam(defaultValue = "20") int size) {
+        if (!JwtUtil.REALM_USER.equals(realm) && !JwtUtil.REALM_ADMIN.equals(realm)) {
+            return Result.error("认证域无效");
+        }
+        if (page < 1 || size < 1 || size > 200) {
+            return Result.error("分页参数无效");
+        }
+        return Result.success(presenceService.pageOnline(realm, page, size));
+    }
+
+    @PostMapping("/jwt-keys/rotate")
+    @PreAuthorize("hasRole('super_admin')")
+    @Operation(summary = "轮换JWT签名密钥", description = "新密钥写入Redis后在所有节点同时生效，已签发的令牌在有效期内仍可验签")
+    public Result<Map<String, Object>> rotateJwtKey(@RequestBody Map<String, String> data) {
+        String newKid = data.get("kid");
+        try {
+            // 未指定secret时随机生成，响应中不返回密钥
+            long activateAt = jwtKeyRing.rotate(newKid, data.get("secret"));
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("kid", newKid);
+            result.put("activateAt", activateAt);
+            return Result.success(result);
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
     @GetMapping("/info")
     @Operation(summary = "获取管理员信息", description = "根据用户名获取管理员详细信息")
     public Result<Admin> getAdminInfo(@Parameter(description = "管理员用户名") @RequestParam String username) {
         try {
             String key = "admins:username:" + username;
-            Admin admin = (Admin) redisTemplate.opsForValue().get(key);
+            Admin admin = taggedCache.get(key);
             if (admin == null) {
                 admin = adminService.findByUsername(username);
                 if (admin == null) {
@@ -135,7 +178,7 @@ public class AdminController {
                 cacheAdmin.setRole(admin.getRole() != null ? admin.getRole() : "admin");
                 cacheAdmin.setStatus(admin.getStatus());
                 cacheAdmin.setLastLogin(admin.getLastLogin());
-                redisTemplate.opsForValue().set(key, cacheAdmin, 1, TimeUnit.HOURS);
+                taggedCache.put(key, cacheAdmin, 1, TimeUnit.HOURS, TaggedCache.admin(admin.getAdminId()));
                 admin = cacheAdmin;
             }
             
@@ -0,0 +1,51 @@
+package com.example.springboot.controller;
+
+import com.example.springboot.common.Result;
+import com.example.springboot.service.impl.UsernameBloomFilter;
+import com.example.springboot.task.RoomStatusTask;
+import com.example.springboot.util.LeaderLease;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admins/metrics")
+@Tag(name = "运行指标", description = "查看缓存、过滤器等内部组件的运行指标，仅管理员可访问")
+public class MetricsController {
+
+    @Autowired
+    private UsernameBloomFilter usernameBloomFilter;
+
+    @Autowired
+    private LeaderLease leaderLease;
+
+    @Autowired
+    private RoomStatusTask roomStatusTask;
+
+    @GetMapping("/username-filter")
+    @Operation(summary = "用户名布隆过滤器指标", description = "获取用户名布隆过滤器的误判率、重建次数等指标")
+    public Result<Map<String, Object>> usernameFilter() {
+        return Result.success(usernameBloomFilter.metrics());
+    }
+
+    @GetMapping("/leader-lease")
+    @Operation(summary = "定时任务领导者租约", description = "查看各定时任务的租约持有节点、本节点是否为领导者及防护令牌")
+    public Result<Map<String, Object>> leaderLease() {
+        Map<String, Object> metrics = leaderLease.metrics();
+        metrics.put("roomStatusPending", roomStatusTask.pendingCount());
+        return Result.success(metrics);
+    }
+
+    @PostMapping("/username-filter/rebuild")
+    @Operation(summary = "重建用户名布隆过滤器", description = "立即从数据库重新加载所有用户名")
+    public Result<Map<String, Object>> rebuildUsernameFilter() {
+        usernameBloomFilter.rebuild();
+        return Result.success(usernameBloomFilter.metrics());
+    }
+}
@@ -3,11 +3,11 @@ package com.example.springboot.controller;
 import com.example.springboot.model.Payment;
 import com.example.springboot.service.PaymentService;
 import com.example.springboot.common.Result;
+import com.example.springboot.util.TaggedCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
@@ -24,9 +24,10 @@ public class PaymentController {
     private PaymentService paymentService;
 
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
-
+    private TaggedCache taggedCache;
 
+    // 全部支付记录列表的标签，单个用户的支付记录使用TaggedCache.user
+    private static final String PAYMENTS_TAG = "payment";
 
     /**
      * 创建支付记录
@@ -47,8 +48,7 @@ public class PaymentController {
         Result<Payment> result = paymentService.createPayment(userId, paymentMethod, amount);
         if (result.getCode() == 200) {
             // 清除相关缓存
-            redisTemplate.delete("payments:user:" + userId);
-            redisTemplate.delete("payments:all");
+            taggedCache.invalidate(PAYMENTS_TAG, TaggedCache.user(userId));
         }
         return result;
     }
@@ -62,11 +62,11 @@ public class PaymentController {
     @Operation(summary = "根据ID获取支付记录", description = "根据支付ID获取支付记录的详细信息")
     public Result<Payment> getPaymentById(@Parameter(description = "支付ID") @PathVariable Integer paymentId) {
         String key = "payments:id:" + paymentId;
-        Payment payment = (Payment) redisTemplate.opsForValue().get(key);
+        Payment payment = taggedCache.get(key);
         if (payment == null) {
             payment = paymentService.findById(paymentId);
             if (payment != null) {
-                redisTemplate.opsForValue().set(key, payment, 1, TimeUnit.HOURS);
+                taggedCache.put(key, payment, 1, TimeUnit.HOURS, TaggedCache.user(payment.getUserId()));
             }
         }
         return Result.success(payment);
@@ -80,12 +80,8 @@ public class PaymentController {
     @GetMapping("/user/{userId}")
     @Operation(summary = "根据用户ID获取支付记录", description = "获取指定用户的所有支付记录")
     public Result<List<Payment>> getPaymentsByUserId(@Parameter(description = "用户ID") @PathVariable Integer userId) {
-        String key = "payments:user:" + userId;
-        List<Payment> payments = (List<Payment>) redisTemplate.opsForValue().get(key);
-        if (payments == null) {
-            payments = paymentService.findByUserId(userId);
-            redisTemplate.opsForValue().set(key, payments, 30, TimeUnit.MINUTES);
-        }
+        List<Payment> payments = taggedCache.getOrLoad("payments:user:" + userId, 30, TimeUnit.MINUTES,
+                () -> paymentService.findByUserId(userId), TaggedCache.user(userId));
         return Result.success(payments);
     }
 
@@ -137,10 +133,11 @@ public class PaymentController {
             // 清除相关缓存
             Payment payment = paymentService.findById(paymentId);
             if (payment != null) {
-                redisTemplate.delete("payments:user:" + payment.getUserId());
+                taggedCache.invalidate(PAYMENTS_TAG, TaggedCache.user(payment.getUserId()));
+            } else {
+                taggedCache.invalidate(PAYMENTS_TAG);
             }
-            redisTemplate.delete("payments:id:" + paymentId);
-            redisTemplate.delete("payments:all");
+            taggedCache.evict("payments:id:" + paymentId);
         }
         return result;
     }
@@ -165,10 +162,11 @@ public class PaymentController {
             // 清除相关缓存
             Payment payment = paymentService.findByAlipayTransactionId(alipayTransactionId);
             if (payment != null) {
-                redisTemplate.delete("payments:user:" + payment.getUserId());
-                redisTemplate.delete("payments:id:" + payment.getPaymentId());
+                taggedCache.invalidate(PAYMENTS_TAG, TaggedCache.user(payment.getUserId()));
+                taggedCache.evict("payments:id:" + payment.getPaymentId());
+            } else {
+                taggedCache.invalidate(PAYMENTS_TAG);
             }
-            redisTemplate.delete("payments:all");
         }
         return result;
     }
@@ -180,12 +178,8 @@ public class PaymentController {
     @GetMapping
     @Operation(summary = "获取所有支付记录", description = "获取系统中所有支付记录列表（管理员权限）")
     public Result<List<Payment>> getAllPayments() {
-        String key = "payments:all";
-        List<Payment> payments = (List<Payment>) redisTemplate.opsForValue().get(key);
-        if (payments == null) {
-            payments = paymentService.findAll();
-            redisTemplate.opsForValue().set(key, payments, 30, TimeUnit.MINUTES);
-        }
+        List<Payment> payments = taggedCache.getOrLoad("payments:all", 30, TimeUnit.MINUTES,
+                paymentService::findAll, PAYMENTS_TAG);
         return Result.success(payments);
     }
 
@@ -203,11 +197,12 @@ public class PaymentController {
         
         if (result.getCode() == 200) {
             // 清除相关缓存
-            redisTemplate.delete("payments:all");
-            redisTemplate.delete("payments:id:" + paymentId);
             if (paymentToDelete != null) {
-                redisTemplate.delete("payments:user:" + paymentToDelete.getUserId());
+                taggedCache.invalidate(PAYMENTS_TAG, TaggedCache.user(paymentToDelete.getUserId()));
+            } else {
+                taggedCache.invalidate(PAYMENTS_TAG);
             }
+            taggedCache.evict("payments:id:" + paymentId);
         }
         return result;
     }
@@ -2,19 +2,29 @@ package com.example.springboot.controller;
 
 import com.example.springboot.model.Room;
 import com.example.springboot.service.RoomService;
+import com.example.springboot.service.UsageRecordService;
+import com.example.springboot.service.impl.RoomEventBroadcaster;
 import com.example.springboot.common.Result;
-import org.springframework.data.redis.core.RedisTemplate;
+import com.example.springboot.util.TaggedCache;
 import org.springframework.security.access.prepost.PreAuthorize;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/rooms")
@@ -24,15 +34,23 @@ public class RoomController {
     @Autowired
     private RoomService roomService;
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private UsageRecordService usageRecordService;
+    @Autowired
+    private TaggedCache taggedCache;
+    @Autowired
+    private RoomEventBroadcaster roomEventBroadcaster;
 
     @GetMapping
     @Operation(summary = "获取所有房间信息", description = "获取系统中所有棋牌室房间的信息列表")
     //获取所有房间信息
     public Result<?> getAllRooms(
             @Parameter(description = "页码，默认为1") @RequestParam(defaultValue = "1") int page,
-            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size) {
+            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size,
+            @Parameter(description = "游标分页令牌，传入时忽略page，第一页传空字符串") @RequestParam(required = false) String cursor) {
         // 移除缓存逻辑，因为分页数据不适合缓存
+        if (cursor != null) {
+            return roomService.getAllRoomsByCursor(cursor, size);
+        }
         return roomService.getAllRooms(page, size);
     }
 
@@ -41,22 +59,53 @@ public class RoomController {
     public Result<?> getAvailableRooms(
             @Parameter(description = "门店ID，可选") @RequestParam(required = false) Integer storeId,
             @Parameter(description = "页码，默认为1") @RequestParam(defaultValue = "1") int page,
-            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size) {
+            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size,
+            @Parameter(description = "游标分页令牌，传入时忽略page，第一页传空字符串") @RequestParam(required = false) String cursor) {
+        if (cursor != null) {
+            return roomService.getAvailableRoomsByCursor(storeId, cursor, size);
+        }
         return roomService.getAvailableRooms(storeId, page, size);
     }
 
+    @GetMapping("/available/earliest")
+    @Operation(summary = "查找最早可预订的时间段", description = "在门店内满足人数和类型的房间中查找最早可预订的时间段，每个房间最多返回一个")
+    public Result<?> findEarliestSlots(
+            @Parameter(description = "门店ID") @RequestParam Integer storeId,
+            @Parameter(description = "预订时长（分钟）") @RequestParam int minutes,
+            @Parameter(description = "人数") @RequestParam int players,
+            @Parameter(description = "房间类型，可选") @RequestParam(required = false) String roomType,
+            @Parameter(description = "最早开始时间，ISO-8601格式，默认为当前时间") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+            @Parameter(description = "最晚结束时间，ISO-8601格式，默认为开始后14天") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+            @Parameter(description = "返回数量，默认为5，最多50") @RequestParam(defaultValue = "5") int limit) {
+        long now = System.currentTimeMillis();
+        long start = from != null ? Math.max(from.getTime(), now) : now;
+        long end = to != null ? to.getTime() : start + 14L * 24 * 60 * 60 * 1000;
+        return roomService.findEarliestSlots(storeId, minutes, players, roomType, start, end, Math.min(limit, 50));
+    }
+
+    @GetMapping("/available/{roomId}/bookings")
+    @Operation(summary = "查询房间时间段是否可预订", description = "检查房间在指定时间段内是否空闲，并返回与之冲突的预订")
+    public Result<?> checkBookingSlot(
+            @Parameter(description = "房间ID") @PathVariable Integer roomId,
+            @Parameter(description = "开始时间，ISO-8601格式") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startTime,
+            @Parameter(description = "结束时间，ISO-8601格式") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endTime) {
+        if (!endTime.after(startTime)) {
+            return Result.error(400, "结束时间必须晚于开始时间");
+        }
+        // 只返回被占用的时间段，不暴露其他用户的预订信息
+        List<Map<String, Object>> conflicts = usageRecordService.findConflicts(roomId,
+                new Timestamp(startTime.getTime()), new Timestamp(endTime.getTime()), null);
+        Map<String, Object> data = new HashMap<>();
+        data.put("free", conflicts.isEmpty());
+        data.put("conflicts", conflicts);
+        return Result.success(data);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "根据ID获取房间信息", description = "根据房间ID获取详细信息")
     public Result<?> getRoomById(@Parameter(description = "房间ID") @PathVariable Integer id) {
-        String key = "rooms:id:" + id;
-        Result<?> result = (Result<?>) redisTemplate.opsForValue().get(key);
-        if (result == null) {
-            result = roomService.getRoomById(id);
-            if (result != null) {
-                redisTemplate.opsForValue().set(key, result, 1, TimeUnit.HOURS);
-            }
-        }
-        return result;
+        // 房间详情由本地房间目录提供，不再经过Redis缓存
+        return roomService.getRoomById(id);
     }
 
     @GetMapping("/store/{storeId}")
@@ -66,26 +115,38 @@ public class RoomController {
     public Result<?> getRoomsByStoreId(
             @Parameter(description = "门店ID") @PathVariable Integer storeId,
             @Parameter(description = "页码，默认为1") @RequestParam(defaultValue = "1") int page,
-            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size) {
+            @Parameter(description = "每页大小，默认为8") @RequestParam(defaultValue = "8") int size,
+            @Parameter(description = "游标分页令牌，传入时忽略page，第一页传空字符串") @RequestParam(required = false) String cursor) {
         if (storeId == null) {
             return Result.error("storeId不能为空");
         }
         // 如果是super_admin，返回所有房间
         if (SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
                 .anyMatch(grantedAuthority -> grantedAuthority.getAuthority().equals("ROLE_super_admin"))) {
-            return roomService.getAllRooms(page, size);
+            return cursor != null ? roomService.getAllRoomsByCursor(cursor, size) : roomService.getAllRooms(page, size);
         }
         // 否则返回指定storeId的房间
-        return roomService.getRoomsByStoreId(storeId, page, size);
+        return cursor != null ? roomService.getRoomsByStoreIdByCursor(storeId, cursor, size) : roomService.getRoomsByStoreId(storeId, page, size);
+    }
+
+    @GetMapping(value = "/store/{storeId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅门店房间状态变化", description = "SSE推送门店内房间状态和空闲数量的变化，重连时携带Last-Event-ID补发错过的事件")
+    //订阅门店房间状态变化
+    public SseEmitter streamRoomEvents(
+            @Parameter(description = "门店ID") @PathVariable Integer storeId,
+            @Parameter(description = "最后收到的事件ID") @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = roomEventBroadcaster.subscribe(storeId, lastEventId);
+        if (emitter == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "订阅连接数已满，请稍后重试");
+        }
+        return emitter;
     }
 
     @PostMapping
     @Operation(summary = "添加房间", description = "添加新的棋牌室房间信息")
     //添加房间信息
     public Result<?> addRoom(@RequestBody Room room) {
-        Result<?> result = roomService.addRoom(room);
-        redisTemplate.delete("rooms:all");
-        return result;
+        return roomService.addRoom(room);
     }
 
     @PutMapping("/{id}")
@@ -94,8 +155,8 @@ public class RoomController {
     public Result<?> updateRoom(@Parameter(description = "房间ID") @PathVariable Integer id, @RequestBody Room room) {
         room.setRoomId(id);
         Result<?> result = roomService.updateRoom(room);
-        redisTemplate.delete("rooms:all");
-        redisTemplate.delete("rooms:id:" + id);
+        // 使用记录缓存中带有房间名称
+        taggedCache.invalidate(TaggedCache.room(id));
         return result;
     }
 
@@ -103,8 +164,7 @@ public class RoomController {
     @Operation(summary = "删除房间", description = "根据ID删除棋牌室房间")
     public Result<?> deleteRoom(@Parameter(description = "房间ID") @PathVariable Integer id) {
         Result<?> result = roomService.deleteRoom(id);
-        redisTemplate.delete("rooms:all");
-        redisTemplate.delete("rooms:id:" + id);
+        taggedCache.invalidate(TaggedCache.room(id));
         return result;
     }
 
@@ -117,9 +177,6 @@ public class RoomController {
         if (status == null) {
             return Result.error("状态参数不能为空");
         }
-        Result<?> result = roomService.updateRoomStatus(id, status);
-        redisTemplate.delete("rooms:all");
-        redisTemplate.delete("rooms:id:" + id);
-        return result;
+        return roomService.updateRoomStatus(id, status);
     }
 }
\ No newline at end of file
@@ -2,16 +2,32 @@ package com.example.springboot.controller;
 
 import com.example.springboot.model.UsageRecord;
 import com.example.springboot.service.UsageRecordService;
-import com.example.springboot.service.RoomService;
 import com.example.springboot.util.JwtUtil;
+import com.example.springboot.util.TaggedCache;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,21 +45,29 @@ public class UsageRecordController {
     private JwtUtil jwtUtil;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private TaggedCache taggedCache;
 
     @Autowired
-    private RoomService roomService;
+    private ObjectMapper objectMapper;
+
+    // 盈利报表缓存时间（分钟），记录变更时按标签失效
+    private static final long PROFIT_CACHE_MINUTES = 10;
+
+    // 导出时每写出多少条记录刷新一次
+    private static final int EXPORT_FLUSH_ROWS = 500;
+
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
+    private static final DateTimeFormatter EXPORT_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneId.systemDefault());
+
     @Operation(summary = "获取所有使用记录")
     @GetMapping
     public ResponseEntity<Map<String, Object>> findAll() {
         Map<String, Object> response = new HashMap<>();
         try {
-            String key = "usage_records:all";
-            List<UsageRecord> records = (List<UsageRecord>) redisTemplate.opsForValue().get(key);
-            if (records == null) {
-                records = usageRecordService.findAll();
-                redisTemplate.opsForValue().set(key, records, 30, TimeUnit.MINUTES);
-            }
+            // 全量记录体积随数据增长，不再整体缓存到Redis，批量获取请使用导出接口
+            List<UsageRecord> records = usageRecordService.findAll();
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", records);
@@ -55,13 +79,75 @@ public class UsageRecordController {
         }
     }
 
+    @Operation(summary = "导出使用记录", description = "以NDJSON或CSV格式流式导出使用记录，边读取边写出，可按门店、用户和日期过滤")
+    @PreAuthorize("hasRole('super_admin') or hasRole('admin')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @Parameter(description = "格式，ndjson或csv，默认为ndjson") @RequestParam(defaultValue = "ndjson") String format,
+            @Parameter(description = "门店ID，可选") @RequestParam(required = false) Integer storeId,
+            @Parameter(description = "用户ID，可选") @RequestParam(required = false) Integer userId,
+            @Parameter(description = "开始日期，yyyy-MM-dd，可选") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "结束日期（包含），yyyy-MM-dd，可选") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Timestamp from = startDate != null ? Timestamp.valueOf(startDate.atStartOfDay()) : null;
+        Timestamp to = endDate != null ? Timestamp.valueOf(endDate.plusDays(1).atStartOfDay()) : null;
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+            JsonGenerator generator = csv ? null : objectMapper.getFactory().createGenerator(writer);
+            if (generator != null) {
+                // 每行一个对象，由writeJsonLine写换行，不需要默认的空格分隔
+                generator.setRootValueSeparator(null);
+            }
+            if (csv) {
+                // 带BOM，Excel按UTF-8识别中文
+                writer.write('\uFEFF');
+                writer.write("recordId,roomId,roomName,userId,storeId,storeName,startTime,endTime,totalPrice\n");
+            }
+            long[] written = {0};
+            try {
+                usageRecordService.exportRecords(storeId, userId, from, to, record -> {
+                    try {
+                        if (csv) {
+                            writeCsvRow(writer, record);
+                        } else {
+                            writeJsonLine(generator, record);
+                        }
+                        // 定期刷新到客户端，内存中只保留一个缓冲区
+                        if (++written[0] % EXPORT_FLUSH_ROWS == 0) {
+                            if (generator != null) {
+                                generator.flush();
+                            }
+                            writer.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (generator != null) {
+                generator.flush();
+            }
+            writer.flush();
+        };
+        String filename = "usage_records." + (csv ? "csv" : "ndjson");
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
+                .body(body);
+    }
+
     @Operation(summary = "根据ID获取使用记录", description = "根据记录ID获取使用记录的详细信息")
     @GetMapping("/{id}")
     public ResponseEntity<Map<String, Object>> findById(@Parameter(description = "记录ID") @PathVariable Integer id) {
         Map<String, Object> response = new HashMap<>();
         try {
             String key = "usage_records:id:" + id;
-            UsageRecord record = (UsageRecord) redisTemplate.opsForValue().get(key);
+            UsageRecord record = taggedCache.get(key);
             if (record == null) {
                 record = usageRecordService.findById(id);
                 if (record == null) {
@@ -69,7 +155,8 @@ public class UsageRecordController {
                     response.put("message", "记录不存在");
                     return ResponseEntity.status(404).body(response);
                 }
-                redisTemplate.opsForValue().set(key, record, 1, TimeUnit.HOURS);
+                taggedCache.put(key, record, 1, TimeUnit.HOURS, TaggedCache.user(record.getUserId()),
+                        TaggedCache.room(record.getRoomId()), TaggedCache.store(record.getStoreId()));
             }
             response.put("code", 200);
             response.put("message", "success");
@@ -87,12 +174,8 @@ public class UsageRecordController {
     public ResponseEntity<Map<String, Object>> findByRoomId(@Parameter(description = "房间ID") @PathVariable Integer roomId) {
         Map<String, Object> response = new HashMap<>();
         try {
-            String key = "usage_records:room:" + roomId;
-            List<UsageRecord> records = (List<UsageRecord>) redisTemplate.opsForValue().get(key);
-            if (records == null) {
-                records = usageRecordService.findByRoomId(roomId);
-                redisTemplate.opsForValue().set(key, records, 30, TimeUnit.MINUTES);
-            }
+            List<UsageRecord> records = taggedCache.getOrLoad("usage_records:room:" + roomId, 30, TimeUnit.MINUTES,
+                    () -> usageRecordService.findByRoomId(roomId), TaggedCache.room(roomId));
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", records);
@@ -109,12 +192,8 @@ public class UsageRecordController {
     public ResponseEntity<Map<String, Object>> findByUserId(@Parameter(description = "用户ID") @PathVariable Integer userId) {
         Map<String, Object> response = new HashMap<>();
         try {
-            String key = "usage_records:user:" + userId;
-            List<UsageRecord> records = (List<UsageRecord>) redisTemplate.opsForValue().get(key);
-            if (records == null) {
-                records = usageRecordService.findByUserId(userId);
-                redisTemplate.opsForValue().set(key, records, 30, TimeUnit.MINUTES);
-            }
+            List<UsageRecord> records = taggedCache.getOrLoad("usage_records:user:" + userId, 30, TimeUnit.MINUTES,
+                    () -> usageRecordService.findByUserId(userId), TaggedCache.user(userId));
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", records);
@@ -184,15 +263,18 @@ public class UsageRecordController {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // 时间字段已经是Timestamp类型，无需转换
-            // 如果需要验证时间格式，可以在这里添加验证逻辑
-            
-            // 创建使用记录
-            int result = usageRecordService.save(usageRecord);
-            
-            // 更新对应房间状态为"使用中"
-            if (usageRecord.getRoomId() != null) {
-                roomService.updateRoomStatus(usageRecord.getRoomId(), "使用中");
+            if (!usageRecord.getEndTime().after(usageRecord.getStartTime())) {
+                response.put("code", 400);
+                response.put("message", "结束时间必须晚于开始时间");
+                return ResponseEntity.badRequest().body(response);
+            }
+
+            // 创建使用记录并占用房间，时间段与已有预订重叠或房间已被占用时拒绝
+            int result;
+            try {
+                result = usageRecordService.save(usageRecord);
+            } catch (IllegalStateException e) {
+                return conflict(response, e, usageRecord, null);
             }
             
             // 清除相关缓存
@@ -217,7 +299,18 @@ public class UsageRecordController {
             // 先获取原记录信息，用于清除缓存
             UsageRecord oldRecord = usageRecordService.findById(id);
             usageRecord.setRecordId(id);
-            int result = usageRecordService.update(usageRecord);
+            if (usageRecord.getStartTime() != null && usageRecord.getEndTime() != null
+                    && !usageRecord.getEndTime().after(usageRecord.getStartTime())) {
+                response.put("code", 400);
+                response.put("message", "结束时间必须晚于开始时间");
+                return ResponseEntity.badRequest().body(response);
+            }
+            int result;
+            try {
+                result = usageRecordService.update(usageRecord);
+            } catch (IllegalStateException e) {
+                return conflict(response, e, usageRecord, id);
+            }
             if (result == 0) {
                 response.put("code", 404);
                 response.put("message", "记录不存在");
@@ -228,7 +321,7 @@ public class UsageRecordController {
                 clearUsageRecordCache(oldRecord.getUserId(), oldRecord.getRoomId(), oldRecord.getStoreId());
             }
             clearUsageRecordCache(usageRecord.getUserId(), usageRecord.getRoomId(), usageRecord.getStoreId());
-            redisTemplate.delete("usage_records:id:" + id);
+            taggedCache.evict("usage_records:id:" + id);
             response.put("code", 200);
             response.put("message", "更新成功");
             response.put("data", usageRecord);
@@ -259,7 +352,7 @@ public class UsageRecordController {
             if (recordToDelete != null) {
                 clearUsageRecordCache(recordToDelete.getUserId(), recordToDelete.getRoomId(), recordToDelete.getStoreId());
             }
-            redisTemplate.delete("usage_records:id:" + id);
+            taggedCache.evict("usage_records:id:" + id);
             
             response.put("code", 200);
             response.put("message", "删除成功");
@@ -296,7 +389,9 @@ public class UsageRecordController {
             @RequestParam(required = false) String endDate) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<Map<String, Object>> data = usageRecordService.getDailyProfit(storeId, startDate, endDate);
+            String key = "usage_records:daily_profit:" + (storeId != null ? storeId : "all") + ":" + startDate + ":" + endDate;
+            List<Map<String, Object>> data = taggedCache.getOrLoad(key, PROFIT_CACHE_MINUTES, TimeUnit.MINUTES,
+                    () -> usageRecordService.getDailyProfit(storeId, startDate, endDate), profitTags("daily", storeId));
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", data);
@@ -315,7 +410,9 @@ public class UsageRecordController {
             @RequestParam(required = false) Integer year) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<Map<String, Object>> data = usageRecordService.getMonthlyProfit(storeId, year);
+            String key = "usage_records:monthly_profit:" + (storeId != null ? storeId : "all") + ":" + year;
+            List<Map<String, Object>> data = taggedCache.getOrLoad(key, PROFIT_CACHE_MINUTES, TimeUnit.MINUTES,
+                    () -> usageRecordService.getMonthlyProfit(storeId, year), profitTags("monthly", storeId));
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", data);
@@ -333,7 +430,9 @@ public class UsageRecordController {
             @RequestParam(required = false) Integer storeId) {
         Map<String, Object> response = new HashMap<>();
         try {
-            List<Map<String, Object>> data = usageRecordService.getYearlyProfit(storeId);
+            String key = "usage_records:yearly_profit:" + (storeId != null ? storeId : "all");
+            List<Map<String, Object>> data = taggedCache.getOrLoad(key, PROFIT_CACHE_MINUTES, TimeUnit.MINUTES,
+                    () -> usageRecordService.getYearlyProfit(storeId), profitTags("yearly", storeId));
             response.put("code", 200);
             response.put("message", "success");
             response.put("data", data);
@@ -344,32 +443,140 @@ public class UsageRecordController {
             return ResponseEntity.internalServerError().body(response);
         }
     }
-    
+
+    @Operation(summary = "营收分析", description = "从内存营收列存查询任意日期范围、门店或房间的营收，可按天、门店或房间分组")
+    @PreAuthorize("hasRole('super_admin') or hasRole('admin')")
+    @GetMapping("/analytics/revenue")
+    public ResponseEntity<Map<String, Object>> getRevenueAnalytics(
+            @Parameter(description = "门店ID，可选") @RequestParam(required = false) Integer storeId,
+            @Parameter(description = "房间ID，可选") @RequestParam(required = false) Integer roomId,
+            @Parameter(description = "开始日期，yyyy-MM-dd，可选") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @Parameter(description = "结束日期（包含），yyyy-MM-dd，默认为今天") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @Parameter(description = "分组方式：none、day、store、room") @RequestParam(defaultValue = "none") String groupBy,
+            @Parameter(description = "按门店或房间分组时返回的条数，最多500") @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        if (limit < 1 || limit > 500) {
+            response.put("code", 400);
+            response.put("message", "limit需在1到500之间");
+            return ResponseEntity.badRequest().body(response);
+        }
+        try {
+            Map<String, Object> data = usageRecordService.getRevenueAnalytics(storeId, roomId, startDate, endDate, groupBy, limit);
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", data);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("code", 400);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("code", 503);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(503).body(response);
+        } catch (Exception e) {
+            response.put("code", 500);
+            response.put("message", "查询失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+
+    @Operation(summary = "重建盈利汇总", description = "从使用记录重建日期范围内的盈利日汇总，日期为空时重建全部")
+    @PreAuthorize("hasRole('super_admin')")
+    @PostMapping("/profit-rollup/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildProfitRollup(
+            @Parameter(description = "开始日期，yyyy-MM-dd") @RequestParam(required = false) String startDate,
+            @Parameter(description = "结束日期（包含），yyyy-MM-dd") @RequestParam(required = false) String endDate) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            int rows = usageRecordService.rebuildProfitRollup(startDate, endDate);
+            taggedCache.invalidate(TaggedCache.report("daily"), TaggedCache.report("monthly"), TaggedCache.report("yearly"));
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", rows);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("code", 500);
+            response.put("message", "重建失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }    
     /**
-     * 清除使用记录相关缓存
+     * 预订时间段冲突，返回409和被占用的时间段
      */
-    private void clearUsageRecordCache(Integer userId, Integer roomId, Integer storeId) {
-        // 清除所有记录缓存
-        redisTemplate.delete("usage_records:all");
-        
-        // 清除用户相关缓存
-        if (userId != null) {
-            redisTemplate.delete("usage_records:user:" + userId);
-        }
-        
-        // 清除房间相关缓存
-        if (roomId != null) {
-            redisTemplate.delete("usage_records:room:" + roomId);
+    private ResponseEntity<Map<String, Object>> conflict(Map<String, Object> response, IllegalStateException e,
+                                                         UsageRecord usageRecord, Integer excludeRecordId) {
+        response.put("code", 409);
+        response.put("message", e.getMessage());
+        response.put("data", usageRecordService.findConflicts(usageRecord.getRoomId(),
+                usageRecord.getStartTime(), usageRecord.getEndTime(), excludeRecordId));
+        return ResponseEntity.status(409).body(response);
+    }
+
+    private static void writeJsonLine(JsonGenerator generator, UsageRecord record) throws IOException {
+        generator.writeStartObject();
+        generator.writeObjectField("recordId", record.getRecordId());
+        generator.writeObjectField("roomId", record.getRoomId());
+        generator.writeStringField("roomName", record.getRoomName());
+        generator.writeObjectField("userId", record.getUserId());
+        generator.writeObjectField("storeId", record.getStoreId());
+        generator.writeStringField("storeName", record.getStoreName());
+        generator.writeStringField("startTime", formatTime(record.getStartTime()));
+        generator.writeStringField("endTime", formatTime(record.getEndTime()));
+        generator.writeObjectField("totalPrice", record.getTotalPrice());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static void writeCsvRow(Writer writer, UsageRecord record) throws IOException {
+        writer.write(csvField(record.getRecordId()));
+        writer.write(',');
+        writer.write(csvField(record.getRoomId()));
+        writer.write(',');
+        writer.write(csvField(record.getRoomName()));
+        writer.write(',');
+        writer.write(csvField(record.getUserId()));
+        writer.write(',');
+        writer.write(csvField(record.getStoreId()));
+        writer.write(',');
+        writer.write(csvField(record.getStoreName()));
+        writer.write(',');
+        writer.write(csvField(formatTime(record.getStartTime())));
+        writer.write(',');
+        writer.write(csvField(formatTime(record.getEndTime())));
+        writer.write(',');
+        writer.write(csvField(record.getTotalPrice()));
+        writer.write('\n');
+    }
+
+    // 含逗号、引号或换行的字段加引号，引号转义为两个引号
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
         }
-        
-        // 清除店铺相关缓存
-        if (storeId != null) {
-            redisTemplate.delete("usage_records:store:" + storeId);
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
         }
-        
-        // 清除统计数据缓存
-        redisTemplate.delete("usage_records:daily_profit:*");
-        redisTemplate.delete("usage_records:monthly_profit:*");
-        redisTemplate.delete("usage_records:yearly_profit:*");
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    private static String formatTime(Timestamp time) {
+        return time != null ? EXPORT_TIME_FORMAT.format(time.toInstant()) : null;
+    }
+
+    // 盈利报表按报表类型和门店登记标签，全部门店的报表登记为store:all
+    private static String[] profitTags(String type, Integer storeId) {
+        return new String[]{TaggedCache.report(type), TaggedCache.store(storeId != null ? storeId : "all")};
+    }
+
+    /**
+     * 清除使用记录相关缓存
+     * 按用户、房间和门店标签失效，包括这些维度下的单条记录、记录列表和盈利报表
+     */
+    private void clearUsageRecordCache(Integer userId, Integer roomId, Integer storeId) {
+        taggedCache.invalidate(TaggedCache.user(userId), TaggedCache.room(roomId),
+                TaggedCache.store(storeId), TaggedCache.store("all"));
     }
 }
@@ -3,9 +3,13 @@ package com.example.springboot.controller;
 import com.example.springboot.dto.LoginDTO;
 import com.example.springboot.dto.RegisterDTO;
 import com.example.springboot.model.User;
+import com.example.springboot.service.PresenceService;
 import com.example.springboot.service.UserService;
 import com.example.springboot.common.Result;
 import com.example.springboot.util.JwtUtil;
+import com.example.springboot.util.TaggedCache;
+import com.example.springboot.util.TokenRevocationStore;
+import io.jsonwebtoken.Claims;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -28,6 +32,15 @@ public class UserController {
     private JwtUtil jwtUtil;
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+    @Autowired
+    private TaggedCache taggedCache;
+    @Autowired
+    private PresenceService presenceService;
+
+    // 用户相关缓存的公共标签，单个用户使用TaggedCache.user
+    private static final String USERS_TAG = "users";
     /**
      * 用户注册
      * @param registerDTO 注册信息
@@ -44,8 +57,8 @@ public class UserController {
                 registerDTO.getPhone()
         );
         if (result.getCode() == 200) {
-            // 清除所有用户列表缓存
-            redisTemplate.delete("users:all");
+            // 清除用户相关缓存
+            taggedCache.invalidate(USERS_TAG);
         }
         return result;
     }
@@ -81,7 +94,7 @@ public class UserController {
     @Operation(summary = "获取用户信息", description = "根据用户名获取用户详细信息")
     public Result<User> getUserInfo(@Parameter(description = "用户名") @RequestParam String username) {
         String key = "users:info:" + username;
-        User user = (User) redisTemplate.opsForValue().get(key);
+        User user = (User) taggedCache.get(key);
         if (user == null) {
             user = userService.findByUsername(username);
             if (user == null) {
@@ -89,8 +102,11 @@ public class UserController {
             }
             // 不返回密码
             user.setPassword(null);
-            redisTemplate.opsForValue().set(key, user, 1, TimeUnit.HOURS);
+            // 按用户ID打标签，用户名被修改后旧用户名的缓存也能一起清除
+            taggedCache.put(key, user, 1, TimeUnit.HOURS, USERS_TAG, TaggedCache.user(user.getUserId()));
         }
+        // 在线状态以在线索引为准，不使用数据库和缓存中的值
+        user.setStatus(presenceService.isOnline(JwtUtil.REALM_USER, username) ? "登录" : "未登录");
         return Result.success(user);
     }
 
@@ -107,13 +123,10 @@ public class UserController {
     @GetMapping("/all")
     @Operation(summary = "获取所有用户信息", description = "获取系统中所有用户的信息列表（管理员权限）")
     public Result<List<User>> getAllUsers() {
-        String key = "users:all";
-        // 强制清除缓存，确保获取最新数据
-        redisTemplate.delete(key);
+        // 管理页面需要最新数据，直接查询不缓存
         List<User> users = userService.findAll();
         // 不返回密码
         users.forEach(user -> user.setPassword(null));
-        redisTemplate.opsForValue().set(key, users, 1, TimeUnit.HOURS);
         return Result.success(users);
     }
 
@@ -126,7 +139,15 @@ public class UserController {
             return userService.logout(username);
         }
         
-        // 如果有有效令牌，也允许登出
+        // 如果有有效令牌，吊销该令牌，退出后不能再使用
+        try {
+            Claims claims = jwtUtil.parseToken(authHeader.substring(7));
+            if (username.equals(claims.getSubject())) {
+                tokenRevocationStore.revoke(claims);
+            }
+        } catch (Exception e) {
+            // 令牌无效或已过期，无需吊销
+        }
         return userService.logout(username);
     }
 
@@ -138,17 +159,11 @@ public class UserController {
     @DeleteMapping("/{userId}")
     @Operation(summary = "删除用户", description = "根据用户ID删除用户（管理员权限）")
     public Result<Void> deleteUser(@Parameter(description = "用户ID") @PathVariable Integer userId) {
-        // 先获取用户信息用于清除缓存
-        User userToDelete = userService.findById(userId);
         Result<Void> result = userService.deleteById(userId);
         
         if (result.getCode() == 200) {
-            // 清除相关缓存
-            redisTemplate.delete("users:all");
-            redisTemplate.delete("users:id:" + userId);
-            if (userToDelete != null && userToDelete.getUsername() != null) {
-                redisTemplate.delete("users:info:" + userToDelete.getUsername());
-            }
+            // 清除该用户的全部缓存，包括其使用记录
+            taggedCache.invalidate(USERS_TAG, TaggedCache.user(userId));
         }
         return result;
     }
@@ -165,12 +180,8 @@ public class UserController {
         Result<Void> result = userService.updateUser(user);
         
         if (result.getCode() == 200) {
-            // 清除相关缓存
-            redisTemplate.delete("users:all");
-            redisTemplate.delete("users:id:" + user.getUserId());
-            if (user.getUsername() != null) {
-                redisTemplate.delete("users:info:" + user.getUsername());
-            }
+            // 清除该用户的全部缓存
+            taggedCache.invalidate(USERS_TAG, TaggedCache.user(user.getUserId()));
         }
         return result;
     }
@@ -196,7 +207,11 @@ public class UserController {
         }
         // 设置user_id
         user.setUserId(Math.toIntExact(userId));
-        return userService.updateUser(user);
+        Result<Void> result = userService.updateUser(user);
+        if (result.getCode() == 200) {
+            taggedCache.invalidate(USERS_TAG, TaggedCache.user(user.getUserId()));
+        }
+        return result;
     }
 
     /**
@@ -207,7 +222,7 @@ public class UserController {
     @GetMapping("/check-username")
     @Operation(summary = "检查用户名", description = "检查用户名是否存在并返回脱敏手机号，用于找回密码")
     public Result<User> checkUsername(@Parameter(description = "用户名") @RequestParam String username) {
-        User user = userService.findByUsername(username);
+        User user = userService.findExistingByUsername(username);
         if (user == null) {
             return Result.error("用户名不存在");
         }
@@ -297,8 +312,7 @@ public class UserController {
             // 清除所有相关的临时数据
             redisTemplate.delete("reset:phone:" + username);
             redisTemplate.delete("reset:token:" + username);
-            redisTemplate.delete("users:info:" + username);
-            redisTemplate.delete("users:all");
+            taggedCache.evict("users:info:" + username);
         }
         
         return result;
@@ -330,12 +344,8 @@ public class UserController {
         Result<Void> result = userService.updateUser(user);
         
         if (result.getCode() == 200) {
-            // 清除相关缓存
-            redisTemplate.delete("users:all");
-            redisTemplate.delete("users:id:" + userId);
-            if (user.getUsername() != null) {
-                redisTemplate.delete("users:info:" + user.getUsername());
-            }
+            // 清除该用户的全部缓存
+            taggedCache.invalidate(USERS_TAG, TaggedCache.user(userId));
         }
         
         return result;
@@ -0,0 +1,18 @@
+package com.example.springboot.mapper;
+
+import com.example.springboot.model.AccountPrincipal;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface AccountMapper {
+
+    /**
+     * 一次查询同时查找普通用户和管理员
+     * @param username 用户名
+     * @return 匹配的账号，最多一个普通用户和一个管理员
+     */
+    List<AccountPrincipal> findPrincipalsByUsername(@Param("username") String username);
+}
@@ -3,6 +3,7 @@ package com.example.springboot.mapper;
 import com.example.springboot.model.Room;
 import org.apache.ibatis.annotations.*;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +23,18 @@ public interface RoomMapper {
     List<Room> findAvailableRooms(@Param("storeId") Integer storeId);
     
     int updateStatus(@Param("roomId") Integer roomId, @Param("status") String status);
+
+    // 仅当房间当前状态为expected时才更新，返回0表示状态已被其他请求修改或房间不存在
+    int compareAndSetStatus(@Param("roomId") Integer roomId, @Param("expected") String expected, @Param("status") String status);
+
+    // 锁定房间行直到事务结束，同一房间的预订在数据库上串行检查和写入，房间不存在时返回null
+    Integer lockById(@Param("roomId") Integer roomId);
+
+    // 释放使用中的房间并更换密码，房间不是使用中时返回0
+    int releaseRoom(@Param("roomId") Integer roomId, @Param("password") Integer password);
+
+    // 查询使用中但最后一条使用记录已结束的房间
+    List<Room> findExpiredOccupiedRooms(@Param("now") Timestamp now);
     
     List<Room> findByStatus(@Param("status") String status);
 
@@ -34,6 +47,13 @@ public interface RoomMapper {
     
     List<Room> findByStoreIdWithPagination(@Param("storeId") Integer storeId, @Param("offset") int offset, @Param("limit") int limit);
     
+    // 游标分页方法，按room_id升序取大于afterId的记录
+    List<Room> findAllAfter(@Param("afterId") int afterId, @Param("limit") int limit);
+
+    List<Room> findAvailableRoomsAfter(@Param("storeId") Integer storeId, @Param("afterId") int afterId, @Param("limit") int limit);
+
+    List<Room> findByStoreIdAfter(@Param("storeId") Integer storeId, @Param("afterId") int afterId, @Param("limit") int limit);
+
     // 统计总数方法
     int countAllRooms();
     
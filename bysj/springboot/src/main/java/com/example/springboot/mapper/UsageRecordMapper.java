@@ -2,7 +2,10 @@ package com.example.springboot.mapper;
 
 import com.example.springboot.model.UsageRecord;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Map;
 
@@ -11,6 +14,14 @@ public interface UsageRecordMapper {
     // 查询所有记录
     List<UsageRecord> findAll();
 
+    // 流式导出记录，按门店、用户和开始时间[startTime, endTime)过滤，参数为null时不限，需在事务内遍历并关闭
+    Cursor<UsageRecord> streamForExport(
+        @Param("storeId") Integer storeId,
+        @Param("userId") Integer userId,
+        @Param("startTime") Timestamp startTime,
+        @Param("endTime") Timestamp endTime
+    );
+
     // 根据ID查询记录
     UsageRecord findById(@Param("recordId") Integer recordId);
 
@@ -40,7 +51,7 @@ public interface UsageRecordMapper {
     // 根据房间ID查询最新的使用记录
     UsageRecord findLatestByRoomId(@Param("roomId") Integer roomId);
 
-    // 查询每日盈利数据，支持按店铺ID和日期范围过滤
+    // 查询每日盈利数据，读取盈利日汇总表，支持按店铺ID和日期范围过滤
     List<Map<String, Object>> getDailyProfit(
         @Param("storeId") Integer storeId,
         @Param("startDate") String startDate,
@@ -58,6 +69,35 @@ public interface UsageRecordMapper {
         @Param("storeId") Integer storeId
     );
 
+    // 累加盈利日汇总，按开始时间所在日、门店和房间归入一行，删除记录时金额和数量传入负数
+    int addDailyProfit(
+        @Param("startTime") Timestamp startTime,
+        @Param("storeId") Integer storeId,
+        @Param("roomId") Integer roomId,
+        @Param("amount") Double amount,
+        @Param("count") int count
+    );
+
+    // 删除日期范围内的盈利日汇总，范围为空时删除全部
+    int deleteDailyProfit(@Param("startDate") String startDate, @Param("endDate") String endDate);
+
+    // 从使用记录重新汇总日期范围内的盈利日汇总
+    int rebuildDailyProfit(@Param("startDate") String startDate, @Param("endDate") String endDate);
+
+    // 逐行读取全部盈利日汇总，用于加载营收列存
+    void streamDailyProfit(ResultHandler<Map<String, Object>> handler);
+
     // 根据店铺ID查询记录
     List<UsageRecord> findByStoreId(@Param("storeId") Integer storeId);
+
+    // 查询结束时间晚于指定时间的记录（进行中和未开始的预订）
+    List<UsageRecord> findEndingAfter(@Param("time") Timestamp time);
+
+    // 查询指定房间与时间段重叠的记录，可排除指定记录
+    List<UsageRecord> findOverlapping(
+        @Param("roomId") Integer roomId,
+        @Param("startTime") Timestamp startTime,
+        @Param("endTime") Timestamp endTime,
+        @Param("excludeRecordId") Integer excludeRecordId
+    );
 }
@@ -68,6 +68,12 @@ public interface UserMapper {
      */
     int updatePassword(@Param("userId") Integer userId, @Param("password") String password);
 
+    /**
+     * 查询所有用户名
+     * @return 用户名列表
+     */
+    List<String> findAllUsernames();
+
 
 
 
@@ -0,0 +1,45 @@
+package com.example.springboot.model;
+
+/**
+ * 账号认证信息
+ * 普通用户和管理员合并查询的结果，realm标识账号来自哪张表
+ */
+public class AccountPrincipal {
+    private String realm;
+    private String username;
+    private String password;
+    private String role;
+
+    // Getters and Setters
+    public String getRealm() {
+        return realm;
+    }
+
+    public void setRealm(String realm) {
+        this.realm = realm;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.springboot.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 在线状态服务
+ * 以Redis有序集合记录账号最近一次活跃时间，作为在线状态的唯一来源
+ */
+public interface PresenceService {
+
+    /**
+     * 账号登录，立即标记为在线
+     * @param realm 认证域（user/admin）
+     * @param username 用户名
+     */
+    void online(String realm, String username);
+
+    /**
+     * 账号退出登录，立即移出在线集合
+     * @param realm 认证域（user/admin）
+     * @param username 用户名
+     */
+    void offline(String realm, String username);
+
+    /**
+     * 记录一次请求活跃，同一账号在节流间隔内只写一次Redis
+     * @param realm 认证域（user/admin）
+     * @param username 用户名
+     */
+    void touch(String realm, String username);
+
+    /**
+     * 检查账号是否在线
+     * @param realm 认证域（user/admin）
+     * @param username 用户名
+     * @return 是否在线
+     */
+    boolean isOnline(String realm, String username);
+
+    /**
+     * 统计在线账号数
+     * @param realm 认证域（user/admin）
+     * @return 在线数
+     */
+    long countOnline(String realm);
+
+    /**
+     * 分页查询在线账号，按最近活跃时间倒序
+     * @param realm 认证域（user/admin）
+     * @param page 页码
+     * @param size 每页大小
+     * @return 分页结果
+     */
+    Map<String, Object> pageOnline(String realm, int page, int size);
+
+    /**
+     * 获取所有在线账号的用户名
+     * @param realm 认证域（user/admin）
+     * @return 用户名集合
+     */
+    Set<String> onlineUsernames(String realm);
+}
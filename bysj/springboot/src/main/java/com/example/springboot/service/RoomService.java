@@ -15,5 +15,37 @@ public interface RoomService {
     Result<?> updateRoomStatus(Integer id, String status);
     Result<?> getRoomsByStoreId(Integer storeId, int page, int size);
 
+    // 游标分页，cursor为上一页返回的nextCursor，第一页传空字符串
+    Result<?> getAllRoomsByCursor(String cursor, int size);
+    Result<?> getAvailableRoomsByCursor(Integer storeId, String cursor, int size);
+    Result<?> getRoomsByStoreIdByCursor(Integer storeId, String cursor, int size);
+
+    /**
+     * 查找门店内满足人数和类型的房间中最早可预订的时间段，每个房间最多一个
+     * @param storeId 门店ID
+     * @param minutes 预订时长（分钟）
+     * @param players 人数
+     * @param roomType 房间类型，为空时不限
+     * @param from 查找范围起点（毫秒）
+     * @param to 查找范围终点（毫秒）
+     * @param limit 最多返回的数量
+     * @return 按开始时间升序的时间段
+     */
+    Result<?> findEarliestSlots(Integer storeId, int minutes, int players, String roomType, long from, long to, int limit);
+
+    /**
+     * 占用空闲房间，仅当房间当前为空闲时成功，在调用方的事务中执行
+     * @param roomId 房间ID
+     * @return 是否占用成功
+     */
+    boolean claimRoom(Integer roomId);
+
+    /**
+     * 释放使用中的房间并重置密码，仅当房间当前为使用中时成功
+     * @param roomId 房间ID
+     * @return 是否释放成功
+     */
+    boolean releaseRoom(Integer roomId);
+
     void checkAndUpdateExpiredRooms();
 }
\ No newline at end of file
@@ -1,8 +1,11 @@
 package com.example.springboot.service;
 
 import com.example.springboot.model.UsageRecord;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface UsageRecordService {
     List<UsageRecord> findAll();
@@ -17,5 +20,47 @@ public interface UsageRecordService {
     List<Map<String, Object>> getMonthlyProfit(Integer storeId, Integer year);
     List<Map<String, Object>> getYearlyProfit(Integer storeId);
 
+    /**
+     * 从营收列存查询任意日期范围的营收，不扫描使用记录
+     * @param storeId 门店ID，为null时为全部门店
+     * @param roomId 房间ID，为null时不限
+     * @param startDate 开始日期（包含），为null时从最早的数据开始
+     * @param endDate 结束日期（包含），为null时到今天
+     * @param groupBy 分组方式：none合计，day按天，store按门店，room按房间
+     * @param limit 按门店或房间分组时返回的条数，按营收降序
+     * @return 日期范围、合计营收和使用次数，分组时另含items
+     */
+    Map<String, Object> getRevenueAnalytics(Integer storeId, Integer roomId, LocalDate startDate, LocalDate endDate,
+                                            String groupBy, int limit);
+
     List<UsageRecord> findByStoreId(Integer storeId);
+
+    /**
+     * 查询房间在指定时间段内与之重叠的预订
+     * @param roomId 房间ID
+     * @param startTime 开始时间
+     * @param endTime 结束时间
+     * @param excludeRecordId 排除的记录ID，可为null
+     * @return 冲突预订的时间段[startTime, endTime)，不包含预订人等信息，可直接返回给任意用户
+     */
+    List<Map<String, Object>> findConflicts(Integer roomId, Timestamp startTime, Timestamp endTime, Integer excludeRecordId);
+
+    /**
+     * 从使用记录重建盈利日汇总，用于首次上线或数据修复
+     * @param startDate 开始日期（yyyy-MM-dd），为null时不限
+     * @param endDate 结束日期（yyyy-MM-dd，包含），为null时不限
+     * @return 重建的汇总行数
+     */
+    int rebuildProfitRollup(String startDate, String endDate);
+
+    /**
+     * 逐条读取满足条件的使用记录，内存占用与记录总数无关
+     * @param storeId 门店ID，为null时不限
+     * @param userId 用户ID，为null时不限
+     * @param startTime 开始时间下限（包含），为null时不限
+     * @param endTime 开始时间上限（不包含），为null时不限
+     * @param consumer 处理每条记录，在读取线程中同步调用
+     * @return 导出的记录数
+     */
+    long exportRecords(Integer storeId, Integer userId, Timestamp startTime, Timestamp endTime, Consumer<UsageRecord> consumer);
 }
@@ -31,6 +31,13 @@ public interface UserService {
      * @return 用户对象
      */
     User findByUsername(String username);
+
+    /**
+     * 根据用户名查找用户，先经过用户名布隆过滤器，一定不存在的用户名不查询数据库
+     * @param username 用户名
+     * @return 用户对象，不存在返回null
+     */
+    User findExistingByUsername(String username);
     
     /**
      * 根据用户ID查找用户
@@ -4,6 +4,8 @@ import com.example.springboot.common.Result;
 import com.example.springboot.mapper.AdminMapper;
 import com.example.springboot.model.Admin;
 import com.example.springboot.service.AdminService;
+import com.example.springboot.service.PresenceService;
+import com.example.springboot.util.AccountRevocationRegistry;
 import com.example.springboot.util.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -12,6 +14,8 @@ import java.sql.Timestamp;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 @Service
 public class AdminServiceImpl implements AdminService {
@@ -22,34 +26,78 @@ public class AdminServiceImpl implements AdminService {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private AccountRevocationRegistry accountRevocationRegistry;
+
+    @Autowired
+    private LoginStatusWriteBehind loginStatusWriteBehind;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private PrincipalResolver principalResolver;
+
     @Override
     public List<Admin> findAll() {
-        return adminMapper.findAll();
+        List<Admin> admins = adminMapper.findAll();
+        Set<String> online = presenceService.onlineUsernames(JwtUtil.REALM_ADMIN);
+        for (Admin admin : admins) {
+            loginStatusWriteBehind.applyPending(admin);
+            admin.setStatus(online.contains(admin.getUsername()) ? "登录" : "未登录");
+        }
+        return admins;
     }
 
     @Override
     public Admin findById(Integer adminId) {
-        return adminMapper.findById(adminId);
+        return loginStatusWriteBehind.applyPending(adminMapper.findById(adminId));
     }
 
     @Override
     public Admin findByUsername(String username) {
-        return adminMapper.findByUsername(username);
+        return loginStatusWriteBehind.applyPending(adminMapper.findByUsername(username));
     }
 
     @Override
     public int save(Admin admin) {
-        return adminMapper.insert(admin);
+        int result = adminMapper.insert(admin);
+        principalResolver.evict(admin.getUsername());
+        return result;
     }
 
     @Override
     public int update(Admin admin) {
-        return adminMapper.update(admin);
+        Admin existingAdmin = adminMapper.findById(admin.getAdminId());
+        int result = adminMapper.update(admin);
+        if (result > 0 && existingAdmin != null) {
+            principalResolver.evict(existingAdmin.getUsername());
+            principalResolver.evict(admin.getUsername());
+        }
+        if (result > 0 && existingAdmin != null && credentialsChanged(existingAdmin, admin)) {
+            // 用户名、密码或角色已变更，旧令牌中的权限不再可信
+            accountRevocationRegistry.revoke(JwtUtil.REALM_ADMIN, existingAdmin.getUsername());
+            presenceService.offline(JwtUtil.REALM_ADMIN, existingAdmin.getUsername());
+        }
+        return result;
+    }
+
+    private boolean credentialsChanged(Admin existingAdmin, Admin admin) {
+        return !Objects.equals(existingAdmin.getUsername(), admin.getUsername())
+                || !Objects.equals(existingAdmin.getPassword(), admin.getPassword())
+                || !Objects.equals(existingAdmin.getRole(), admin.getRole());
     }
 
     @Override
     public int delete(Integer adminId) {
-        return adminMapper.deleteById(adminId);
+        Admin existingAdmin = adminMapper.findById(adminId);
+        int result = adminMapper.deleteById(adminId);
+        if (result > 0 && existingAdmin != null) {
+            accountRevocationRegistry.revoke(JwtUtil.REALM_ADMIN, existingAdmin.getUsername());
+            presenceService.offline(JwtUtil.REALM_ADMIN, existingAdmin.getUsername());
+            principalResolver.evict(existingAdmin.getUsername());
+        }
+        return result;
     }
 
     @Override
@@ -65,6 +113,7 @@ public class AdminServiceImpl implements AdminService {
         admin.setLastLogin(new Timestamp(System.currentTimeMillis()));
         // 保存管理员
         adminMapper.insert(admin);
+        principalResolver.evict(admin.getUsername());
         // 不返回密码
         admin.setPassword(null);
         return Result.success(admin);
@@ -89,10 +138,15 @@ public class AdminServiceImpl implements AdminService {
         // 更新管理员状态和最后登录时间
         admin.setStatus("登录");
         admin.setLastLogin(new Timestamp(System.currentTimeMillis()));
-        adminMapper.updateLoginStatus(admin.getAdminId(), admin.getStatus(), admin.getLastLogin());
+        loginStatusWriteBehind.updateAdminStatus(admin.getAdminId(), admin.getStatus(), admin.getLastLogin());
+        presenceService.online(JwtUtil.REALM_ADMIN, username);
         // 生成JWT令牌，包含storeId
         Map<String, Object> claims = new HashMap<>();
         claims.put("storeId", storeId);
+        // 记录认证域和角色，过滤器可直接据此构建认证信息
+        claims.put(JwtUtil.CLAIM_REALM, JwtUtil.REALM_ADMIN);
+        claims.put(JwtUtil.CLAIM_AUTHORITIES,
+                List.of("ROLE_" + (admin.getRole() != null ? admin.getRole().toUpperCase() : "ADMIN")));
         String token = jwtUtil.generateToken(username, admin.getAdminId().longValue(), claims);
         System.out.println("管理员登录成功，生成token：" + token);
         return Result.success(token);
@@ -102,8 +156,8 @@ public class AdminServiceImpl implements AdminService {
     public void logout(Integer adminId) {
         Admin admin = adminMapper.findById(adminId);
         if (admin != null) {
-            admin.setStatus("未登录");
-            adminMapper.updateLoginStatus(adminId, admin.getStatus(), admin.getLastLogin());
+            // 从在线索引中移除，不再写数据库
+            presenceService.offline(JwtUtil.REALM_ADMIN, admin.getUsername());
         }
     }
 }
@@ -0,0 +1,493 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.mapper.UsageRecordMapper;
+import com.example.springboot.model.UsageRecord;
+import com.example.springboot.util.IntervalTree;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 房间预订区间索引
+ * 每个房间一棵区间树，保存进行中和未开始的使用记录，判断时间段是否空闲为O(log n)。
+ * 启动时从usage_records加载，新增、修改、删除记录时同步更新，
+ * 并通过Redis通知其他节点从数据库重新加载该记录，另有定时全量核对兜底。
+ * 检查冲突和写入数据库需在同一房间锁内完成，见callLocked
+ */
+@Slf4j
+@Component
+public class BookingIndex implements MessageListener {
+
+    private static final String CHANNEL = "booking:changed";
+
+    // 本节点标识，忽略自己发布的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private UsageRecordMapper usageRecordMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 房间ID -> 区间树，区间树同时作为该房间的锁，创建后不再移除
+    private final Map<Integer, IntervalTree<Booking>> trees = new ConcurrentHashMap<>();
+
+    // 记录ID -> 预订
+    private final Map<Integer, Booking> bookings = new ConcurrentHashMap<>();
+
+    // 变更次数，用于判断从数据库加载期间是否有并发修改
+    private final AtomicLong modifications = new AtomicLong();
+
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        for (int attempt = 0; attempt < 3 && !ready; attempt++) {
+            reload();
+        }
+    }
+
+    /**
+     * 定时与数据库全量核对，兜底丢失的通知和直接修改数据库的情况
+     */
+    @Scheduled(fixedDelayString = "${booking-index.reconcile-interval:300000}", initialDelayString = "${booking-index.reconcile-interval:300000}")
+    public void reconcile() {
+        reload();
+    }
+
+    /**
+     * 定时移除已结束的预订
+     */
+    @Scheduled(fixedDelayString = "${booking-index.prune-interval:600000}")
+    public void pruneEnded() {
+        long now = System.currentTimeMillis();
+        for (Booking booking : bookings.values()) {
+            if (booking.end <= now) {
+                IntervalTree<Booking> tree = lockFor(booking.roomId);
+                synchronized (tree) {
+                    if (bookings.remove(booking.recordId, booking)) {
+                        tree.remove(booking.start, booking.recordId);
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 在房间锁内执行操作，检查冲突与写入数据库需在锁内完成，避免本节点并发预订同一时间段。
+     * 该锁只在本节点内有效，跨节点的串行由调用方在事务中锁定房间行保证。
+     * 记录更换房间时按房间ID顺序同时持有两个房间的锁
+     * @param roomId 房间ID
+     * @param previousRoomId 记录原来所在的房间ID，新增记录时为null
+     * @param action 要执行的操作
+     * @return 操作结果
+     */
+    public <T> T callLocked(Integer roomId, Integer previousRoomId, Supplier<T> action) {
+        if (previousRoomId == null || previousRoomId.equals(roomId)) {
+            synchronized (lockFor(roomId)) {
+                return action.get();
+            }
+        }
+        int first = Math.min(roomId, previousRoomId);
+        int second = Math.max(roomId, previousRoomId);
+        synchronized (lockFor(first)) {
+            synchronized (lockFor(second)) {
+                return action.get();
+            }
+        }
+    }
+
+    /**
+     * 查询与时间段[startTime, endTime)重叠的预订
+     * 索引尚未加载完成时查询数据库
+     * @param roomId 房间ID
+     * @param startTime 开始时间
+     * @param endTime 结束时间
+     * @param excludeRecordId 排除的记录ID，修改记录时传入自身ID，可为null
+     * @return 冲突的使用记录，按开始时间升序
+     */
+    public List<UsageRecord> conflicts(Integer roomId, Timestamp startTime, Timestamp endTime, Integer excludeRecordId) {
+        if (!ready) {
+            return usageRecordMapper.findOverlapping(roomId, startTime, endTime, excludeRecordId);
+        }
+        List<UsageRecord> result = new ArrayList<>();
+        IntervalTree<Booking> tree = trees.get(roomId);
+        if (tree == null) {
+            return result;
+        }
+        synchronized (tree) {
+            for (Booking booking : tree.overlapping(startTime.getTime(), endTime.getTime())) {
+                if (excludeRecordId == null || booking.recordId != excludeRecordId) {
+                    result.add(booking.toRecord());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 判断时间段是否空闲
+     */
+    public boolean isFree(Integer roomId, Timestamp startTime, Timestamp endTime, Integer excludeRecordId) {
+        if (ready && excludeRecordId == null) {
+            IntervalTree<Booking> tree = trees.get(roomId);
+            if (tree == null) {
+                return true;
+            }
+            synchronized (tree) {
+                return !tree.overlapsAny(startTime.getTime(), endTime.getTime());
+            }
+        }
+        return conflicts(roomId, startTime, endTime, excludeRecordId).isEmpty();
+    }
+
+    /**
+     * 查找房间在[from, to)内最早可预订的时间，调用前需确认索引已加载完成
+     * @param roomId 房间ID
+     * @param from 查找范围起点（毫秒）
+     * @param to 查找范围终点（毫秒）
+     * @param duration 预订时长（毫秒）
+     * @return 最早可开始的时间（毫秒），不存在时返回-1
+     */
+    public long earliestFree(Integer roomId, long from, long to, long duration) {
+        IntervalTree<Booking> tree = trees.get(roomId);
+        if (tree == null) {
+            return from + duration <= to ? from : -1;
+        }
+        synchronized (tree) {
+            return tree.firstGap(from, to, duration);
+        }
+    }
+
+    /**
+     * 获取记录对应的预订
+     * @param recordId 记录ID
+     * @return 预订，记录不存在或已结束时返回null
+     */
+    public Booking get(Integer recordId) {
+        return recordId != null ? bookings.get(recordId) : null;
+    }
+
+    /**
+     * 获取所有进行中和未开始的预订，不可修改
+     * @return 预订
+     */
+    public Collection<Booking> snapshots() {
+        return Collections.unmodifiableCollection(bookings.values());
+    }
+
+    /**
+     * 新增或修改记录后更新索引，并通知其他节点
+     * @param record 写入数据库后的使用记录
+     */
+    public void put(UsageRecord record) {
+        if (record == null || record.getRecordId() == null) {
+            return;
+        }
+        apply(record.getRecordId(), record);
+        publish(record.getRecordId());
+    }
+
+    /**
+     * 删除记录后更新索引，并通知其他节点
+     * @param recordId 记录ID
+     */
+    public void remove(Integer recordId) {
+        apply(recordId, null);
+        publish(recordId);
+    }
+
+    /**
+     * 接收其他节点的记录变更通知，从数据库重新加载该记录
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        try {
+            refresh(Integer.valueOf(body.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            log.error("无效的预订变更通知: {}", body);
+        }
+    }
+
+    /**
+     * 从数据库重新加载所有进行中和未开始的预订
+     */
+    public void reload() {
+        long modificationsBeforeLoad = modifications.get();
+        long loadTime = System.currentTimeMillis();
+        List<UsageRecord> loaded;
+        try {
+            loaded = usageRecordMapper.findEndingAfter(new Timestamp(loadTime));
+        } catch (Exception e) {
+            log.error("加载预订索引失败: {}", e.getMessage());
+            return;
+        }
+        Map<Integer, List<Booking>> byRoom = new HashMap<>();
+        for (UsageRecord record : loaded) {
+            Booking booking = Booking.of(record);
+            if (booking != null) {
+                byRoom.computeIfAbsent(booking.roomId, key -> new ArrayList<>()).add(booking);
+            }
+        }
+        Map<Integer, List<Booking>> existingByRoom = new HashMap<>();
+        for (Booking booking : bookings.values()) {
+            existingByRoom.computeIfAbsent(booking.roomId, key -> new ArrayList<>()).add(booking);
+        }
+        Map<Integer, Booking> freshById = new HashMap<>();
+        byRoom.values().forEach(list -> list.forEach(booking -> freshById.put(booking.recordId, booking)));
+        // 先移除所有过期的预订再添加新的，更换了房间的记录才能在两个房间之间正确迁移。
+        // 逐个房间加锁处理，加载期间有记录变更时放弃本次结果，避免用旧数据覆盖新数据
+        int drift = 0;
+        for (Map.Entry<Integer, List<Booking>> entry : existingByRoom.entrySet()) {
+            IntervalTree<Booking> tree = lockFor(entry.getKey());
+            synchronized (tree) {
+                if (modifications.get() != modificationsBeforeLoad) {
+                    log.debug("加载预订索引期间记录发生变更，等待下次核对");
+                    return;
+                }
+                for (Booking existing : entry.getValue()) {
+                    if (!existing.equals(freshById.get(existing.recordId)) && bookings.remove(existing.recordId, existing)) {
+                        tree.remove(existing.start, existing.recordId);
+                        // 已结束的预订本就应当移除，不算差异
+                        if (existing.end > loadTime) {
+                            drift++;
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, List<Booking>> entry : byRoom.entrySet()) {
+            IntervalTree<Booking> tree = lockFor(entry.getKey());
+            synchronized (tree) {
+                if (modifications.get() != modificationsBeforeLoad) {
+                    log.debug("加载预订索引期间记录发生变更，等待下次核对");
+                    return;
+                }
+                for (Booking booking : entry.getValue()) {
+                    if (bookings.putIfAbsent(booking.recordId, booking) == null) {
+                        tree.add(booking.start, booking.end, booking.recordId, booking);
+                        drift++;
+                    }
+                }
+            }
+        }
+        if (ready && drift > 0) {
+            log.warn("预订索引与数据库存在{}处差异，已修正", drift);
+        }
+        ready = true;
+        eventPublisher.publishEvent(new BookingIndexReloadedEvent());
+    }
+
+    // 区间树同时作为房间锁，除callLocked外每次只持有一个房间的锁
+    private IntervalTree<Booking> lockFor(Integer roomId) {
+        return trees.computeIfAbsent(roomId, key -> new IntervalTree<>());
+    }
+
+    private void apply(Integer recordId, UsageRecord record) {
+        Booking booking = Booking.of(record);
+        if (booking != null && booking.end <= System.currentTimeMillis()) {
+            booking = null;
+        }
+        Booking previous = bookings.get(recordId);
+        if (previous != null) {
+            IntervalTree<Booking> tree = lockFor(previous.roomId);
+            synchronized (tree) {
+                modifications.incrementAndGet();
+                if (bookings.remove(recordId, previous)) {
+                    tree.remove(previous.start, previous.recordId);
+                }
+            }
+        }
+        if (booking != null) {
+            IntervalTree<Booking> tree = lockFor(booking.roomId);
+            synchronized (tree) {
+                modifications.incrementAndGet();
+                Booking replaced = bookings.put(recordId, booking);
+                if (replaced != null && replaced.roomId == booking.roomId) {
+                    tree.remove(replaced.start, replaced.recordId);
+                }
+                tree.add(booking.start, booking.end, booking.recordId, booking);
+            }
+        }
+        if (!Objects.equals(previous, booking)) {
+            eventPublisher.publishEvent(new BookingChangedEvent(recordId));
+        }
+    }
+
+    private void publish(Integer recordId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 在事务中修改时，提交后再通知其他节点，回滚时从数据库恢复本地索引
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        send(recordId);
+                    } else {
+                        refresh(recordId);
+                    }
+                }
+            });
+            return;
+        }
+        send(recordId);
+    }
+
+    private void send(Integer recordId) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + recordId);
+        } catch (Exception e) {
+            log.error("发布预订变更通知失败: {}", e.getMessage());
+        }
+    }
+
+    private void refresh(Integer recordId) {
+        try {
+            apply(recordId, usageRecordMapper.findById(recordId));
+        } catch (Exception e) {
+            log.error("重新加载预订失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 单条预订变更事件，在锁外同步发布，监听方通过get获取最新的预订
+     */
+    public static final class BookingChangedEvent {
+        private final Integer recordId;
+
+        private BookingChangedEvent(Integer recordId) {
+            this.recordId = recordId;
+        }
+
+        public Integer getRecordId() {
+            return recordId;
+        }
+    }
+
+    /**
+     * 全量加载完成事件
+     */
+    public static final class BookingIndexReloadedEvent {
+    }
+
+    /**
+     * 预订，区间为[start, end)，时间均为毫秒
+     */
+    public static final class Booking {
+        private final int recordId;
+        private final int roomId;
+        private final Integer userId;
+        private final Integer storeId;
+        private final long start;
+        private final long end;
+
+        private Booking(int recordId, int roomId, Integer userId, Integer storeId, long start, long end) {
+            this.recordId = recordId;
+            this.roomId = roomId;
+            this.userId = userId;
+            this.storeId = storeId;
+            this.start = start;
+            this.end = end;
+        }
+
+        private static Booking of(UsageRecord record) {
+            if (record == null || record.getRecordId() == null || record.getRoomId() == null
+                    || record.getStartTime() == null || record.getEndTime() == null
+                    || !record.getEndTime().after(record.getStartTime())) {
+                return null;
+            }
+            return new Booking(record.getRecordId(), record.getRoomId(), record.getUserId(), record.getStoreId(),
+                    record.getStartTime().getTime(), record.getEndTime().getTime());
+        }
+
+        public int getRecordId() {
+            return recordId;
+        }
+
+        public int getRoomId() {
+            return roomId;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        private UsageRecord toRecord() {
+            UsageRecord record = new UsageRecord();
+            record.setRecordId(recordId);
+            record.setRoomId(roomId);
+            record.setUserId(userId);
+            record.setStoreId(storeId);
+            record.setStartTime(new Timestamp(start));
+            record.setEndTime(new Timestamp(end));
+            return record;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Booking)) {
+                return false;
+            }
+            Booking other = (Booking) o;
+            return recordId == other.recordId && roomId == other.roomId && start == other.start && end == other.end
+                    && Objects.equals(userId, other.userId) && Objects.equals(storeId, other.storeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(recordId);
+        }
+    }
+}
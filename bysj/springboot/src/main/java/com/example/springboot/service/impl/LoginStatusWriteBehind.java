@@ -0,0 +1,186 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.mapper.AdminMapper;
+import com.example.springboot.mapper.UserMapper;
+import com.example.springboot.model.Admin;
+import com.example.springboot.model.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 登录状态延迟写入
+ * 登录、退出时只把状态和最后登录时间记入内存，按用户ID合并，
+ * 由定时任务或积压达到阈值时通过MyBatis批量执行器一次性写入数据库，应用关闭时全部写入。
+ * 读取用户和管理员信息时会叠加尚未写入的状态
+ */
+@Slf4j
+@Component
+public class LoginStatusWriteBehind {
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Value("${login-status.flush-size:200}")
+    private int flushSize;
+
+    private final Map<Integer, PendingStatus> pendingUsers = new ConcurrentHashMap<>();
+
+    private final Map<Integer, PendingStatus> pendingAdmins = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * 记录用户状态变更
+     * @param userId 用户ID
+     * @param status 状态
+     * @param lastLogin 最后登录时间
+     */
+    public void updateUserStatus(Integer userId, String status, Date lastLogin) {
+        pendingUsers.put(userId, new PendingStatus(status, lastLogin));
+        flushIfFull();
+    }
+
+    /**
+     * 记录管理员状态变更
+     * @param adminId 管理员ID
+     * @param status 状态
+     * @param lastLogin 最后登录时间
+     */
+    public void updateAdminStatus(Integer adminId, String status, Timestamp lastLogin) {
+        pendingAdmins.put(adminId, new PendingStatus(status, lastLogin));
+        flushIfFull();
+    }
+
+    /**
+     * 叠加尚未写入数据库的用户状态
+     * @param user 用户
+     * @return 同一个用户对象
+     */
+    public User applyPending(User user) {
+        if (user != null && !pendingUsers.isEmpty()) {
+            PendingStatus pending = pendingUsers.get(user.getUserId());
+            if (pending != null) {
+                user.setStatus(pending.status);
+                user.setLastLogin(pending.lastLogin);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * 叠加尚未写入数据库的管理员状态
+     * @param admin 管理员
+     * @return 同一个管理员对象
+     */
+    public Admin applyPending(Admin admin) {
+        if (admin != null && !pendingAdmins.isEmpty()) {
+            PendingStatus pending = pendingAdmins.get(admin.getAdminId());
+            if (pending != null) {
+                admin.setStatus(pending.status);
+                admin.setLastLogin(pending.lastLogin != null ? new Timestamp(pending.lastLogin.getTime()) : null);
+            }
+        }
+        return admin;
+    }
+
+    /**
+     * 每秒批量写入一次积压的状态变更
+     */
+    @Scheduled(fixedDelayString = "${login-status.flush-interval:1000}")
+    public void flush() {
+        if (pendingUsers.isEmpty() && pendingAdmins.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            List<Map.Entry<Integer, PendingStatus>> users = new ArrayList<>(pendingUsers.entrySet());
+            List<Map.Entry<Integer, PendingStatus>> admins = new ArrayList<>(pendingAdmins.entrySet());
+            if (users.isEmpty() && admins.isEmpty()) {
+                return;
+            }
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                UserMapper userMapper = session.getMapper(UserMapper.class);
+                for (Map.Entry<Integer, PendingStatus> entry : users) {
+                    userMapper.updateStatus(entry.getKey(), entry.getValue().status, entry.getValue().lastLogin);
+                }
+                AdminMapper adminMapper = session.getMapper(AdminMapper.class);
+                for (Map.Entry<Integer, PendingStatus> entry : admins) {
+                    PendingStatus pending = entry.getValue();
+                    adminMapper.updateLoginStatus(entry.getKey(), pending.status,
+                            pending.lastLogin != null ? new Timestamp(pending.lastLogin.getTime()) : null);
+                }
+                session.flushStatements();
+                session.commit();
+            }
+            // 只移除已写入的值，写入期间产生的新变更留待下一批
+            users.forEach(entry -> pendingUsers.remove(entry.getKey(), entry.getValue()));
+            admins.forEach(entry -> pendingAdmins.remove(entry.getKey(), entry.getValue()));
+            log.debug("批量写入登录状态: 用户{}条，管理员{}条", users.size(), admins.size());
+        } catch (Exception e) {
+            log.error("批量写入登录状态失败: {}", e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 应用关闭前写入所有积压的状态变更
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void flushIfFull() {
+        if (pendingUsers.size() + pendingAdmins.size() >= flushSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                taskExecutor.execute(() -> {
+                    try {
+                        flush();
+                    } finally {
+                        flushScheduled.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 线程池已满，积压的状态留给定时任务写入，不影响登录请求
+                flushScheduled.set(false);
+                log.debug("提交登录状态写入任务被拒绝，等待定时写入");
+            }
+        }
+    }
+
+    private static final class PendingStatus {
+        private final String status;
+        private final Date lastLogin;
+
+        private PendingStatus(String status, Date lastLogin) {
+            this.status = status;
+            this.lastLogin = lastLogin;
+        }
+    }
+}
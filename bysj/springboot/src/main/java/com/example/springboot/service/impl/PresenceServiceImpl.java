@@ -0,0 +1,167 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.service.PresenceService;
+import com.example.springboot.util.JwtUtil;
+import com.example.springboot.util.LeaderLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class PresenceServiceImpl implements PresenceService {
+
+    private static final String PRESENCE_KEY_PREFIX = "presence:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private LeaderLease leaderLease;
+
+    // 同一账号两次写入活跃时间的最小间隔（毫秒）
+    @Value("${presence.touch-interval:30000}")
+    private long touchInterval;
+
+    // 超过该时长没有请求即视为离线（毫秒），不超过令牌有效期
+    @Value("${presence.idle-timeout:1800000}")
+    private long idleTimeout;
+
+    // 认证域:用户名 -> 本节点最近一次写入Redis的时间
+    private final Map<String, Long> lastTouched = new ConcurrentHashMap<>();
+
+    @Override
+    public void online(String realm, String username) {
+        long now = System.currentTimeMillis();
+        try {
+            stringRedisTemplate.opsForZSet().add(key(realm), username, now);
+            lastTouched.put(realm + ":" + username, now);
+        } catch (Exception e) {
+            log.error("记录在线状态失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void offline(String realm, String username) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(key(realm), username);
+        } catch (Exception e) {
+            log.error("移除在线状态失败: {}", e.getMessage());
+        }
+        lastTouched.remove(realm + ":" + username);
+    }
+
+    @Override
+    public void touch(String realm, String username) {
+        long now = System.currentTimeMillis();
+        String member = realm + ":" + username;
+        Long last = lastTouched.get(member);
+        if (last != null && now - last < touchInterval) {
+            return;
+        }
+        lastTouched.put(member, now);
+        try {
+            stringRedisTemplate.opsForZSet().add(key(realm), username, now);
+        } catch (Exception e) {
+            log.error("更新在线状态失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isOnline(String realm, String username) {
+        try {
+            Double score = stringRedisTemplate.opsForZSet().score(key(realm), username);
+            return score != null && score >= cutoff();
+        } catch (Exception e) {
+            log.error("查询在线状态失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public long countOnline(String realm) {
+        Long count = stringRedisTemplate.opsForZSet().count(key(realm), cutoff(), Double.POSITIVE_INFINITY);
+        return count != null ? count : 0;
+    }
+
+    @Override
+    public Map<String, Object> pageOnline(String realm, int page, int size) {
+        long offset = (long) (page - 1) * size;
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(key(realm), cutoff(), Double.POSITIVE_INFINITY, offset, size);
+        List<Map<String, Object>> records = new ArrayList<>();
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                Map<String, Object> record = new LinkedHashMap<>();
+                record.put("username", tuple.getValue());
+                record.put("lastSeen", tuple.getScore() != null ? tuple.getScore().longValue() : null);
+                records.add(record);
+            }
+        }
+        long total = countOnline(realm);
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", records);
+        result.put("total", total);
+        result.put("current", page);
+        result.put("size", size);
+        result.put("pages", (int) Math.ceil((double) total / size));
+        return result;
+    }
+
+    @Override
+    public Set<String> onlineUsernames(String realm) {
+        try {
+            Set<String> usernames = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(key(realm), cutoff(), Double.POSITIVE_INFINITY);
+            return usernames != null ? usernames : Collections.emptySet();
+        } catch (Exception e) {
+            log.error("查询在线账号失败: {}", e.getMessage());
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * 每分钟移除已超时的在线记录
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void removeExpired() {
+        double cutoff = cutoff();
+        // Redis中的在线集合由持有租约的节点统一清理，本地节流记录每个节点各自清理
+        if (!leaderLease.isLeader("presence-prune")) {
+            lastTouched.values().removeIf(time -> time < cutoff);
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(key(JwtUtil.REALM_USER), Double.NEGATIVE_INFINITY, cutoff);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(key(JwtUtil.REALM_ADMIN), Double.NEGATIVE_INFINITY, cutoff);
+        } catch (Exception e) {
+            log.error("清理过期在线状态失败: {}", e.getMessage());
+        }
+        lastTouched.values().removeIf(time -> time < cutoff);
+    }
+
+    private String key(String realm) {
+        return PRESENCE_KEY_PREFIX + realm;
+    }
+
+    // 最近活跃时间早于该值的记录视为离线
+    private double cutoff() {
+        return System.currentTimeMillis() - Math.min(idleTimeout, jwtUtil.getExpirationMillis());
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.config.RouteRealmClassifier;
+import com.example.springboot.mapper.AccountMapper;
+import com.example.springboot.model.AccountPrincipal;
+import com.example.springboot.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 统一的账号认证信息解析
+ * 一条UNION查询同时查找普通用户和管理员，结果按用户名缓存，
+ * 共享路径上的管理员请求不再需要先查用户表失败再查管理员表。
+ * 账号被修改或删除时由对应的Service清除缓存
+ */
+@Component
+public class PrincipalResolver {
+
+    @Autowired
+    private AccountMapper accountMapper;
+
+    @Value("${principal-cache.ttl:60000}")
+    private long ttl;
+
+    private final int maxSize;
+
+    private final LinkedHashMap<String, CachedAccounts> cache;
+
+    // 清除次数，由cache的锁保护
+    private long evictions;
+
+    public PrincipalResolver(@Value("${principal-cache.max-size:10000}") int maxSize) {
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedAccounts> eldest) {
+                return size() > PrincipalResolver.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 按请求路径的认证域解析账号
+     * @param username 用户名
+     * @param routeRealm 请求路径的认证域，共享路径优先取普通用户
+     * @return 账号认证信息
+     * @throws UsernameNotFoundException 对应认证域下不存在该账号
+     */
+    public AccountPrincipal resolve(String username, RouteRealmClassifier.Realm routeRealm) {
+        List<AccountPrincipal> accounts = load(username);
+        AccountPrincipal user = null;
+        AccountPrincipal admin = null;
+        for (AccountPrincipal account : accounts) {
+            if (JwtUtil.REALM_ADMIN.equals(account.getRealm())) {
+                admin = account;
+            } else {
+                user = account;
+            }
+        }
+        AccountPrincipal resolved;
+        if (routeRealm == RouteRealmClassifier.Realm.ADMIN) {
+            resolved = admin;
+        } else if (routeRealm == RouteRealmClassifier.Realm.SHARED) {
+            resolved = user != null ? user : admin;
+        } else {
+            resolved = user;
+        }
+        if (resolved == null) {
+            throw new UsernameNotFoundException("用户不存在: " + username);
+        }
+        return resolved;
+    }
+
+    /**
+     * 转换为Spring Security的用户详情，与CustomUserDetailsService、CustomAdminDetailsService保持一致
+     * @param account 账号认证信息
+     * @return 用户详情
+     */
+    public UserDetails toUserDetails(AccountPrincipal account) {
+        if (JwtUtil.REALM_ADMIN.equals(account.getRealm())) {
+            return User.builder()
+                    .username(account.getUsername())
+                    .password(account.getPassword())
+                    .roles(account.getRole() != null ? account.getRole().toUpperCase() : "ADMIN")
+                    .build();
+        }
+        return new User(account.getUsername(), account.getPassword(), new ArrayList<>());
+    }
+
+    /**
+     * 清除指定用户名的缓存，账号新增、修改、删除后调用
+     * @param username 用户名
+     */
+    public void evict(String username) {
+        if (username == null) {
+            return;
+        }
+        synchronized (cache) {
+            cache.remove(key(username));
+            evictions++;
+        }
+    }
+
+    private List<AccountPrincipal> load(String username) {
+        String key = key(username);
+        long now = System.currentTimeMillis();
+        long evictionsBeforeLoad;
+        synchronized (cache) {
+            CachedAccounts cached = cache.get(key);
+            if (cached != null && cached.expiresAt > now) {
+                return cached.accounts;
+            }
+            evictionsBeforeLoad = evictions;
+        }
+        List<AccountPrincipal> accounts = accountMapper.findPrincipalsByUsername(username);
+        // 不存在的用户名不缓存，避免新注册的账号在缓存过期前无法登录；
+        // 查询期间发生过清除时也不缓存，避免把修改前的数据写回缓存
+        if (!accounts.isEmpty()) {
+            synchronized (cache) {
+                if (evictions == evictionsBeforeLoad) {
+                    cache.put(key, new CachedAccounts(accounts, now + ttl));
+                }
+            }
+        }
+        return accounts;
+    }
+
+    // 数据库排序规则不区分大小写，缓存键也统一为小写
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class CachedAccounts {
+        private final List<AccountPrincipal> accounts;
+        private final long expiresAt;
+
+        private CachedAccounts(List<AccountPrincipal> accounts, long expiresAt) {
+            this.accounts = accounts;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.mapper.UsageRecordMapper;
+import com.example.springboot.util.RevenueColumns;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 营收列式内存存储
+ * 按日期 × 门店 × 房间保存营收和使用次数的前缀和（见RevenueColumns），
+ * 任意日期范围、门店或房间的合计为O(1)，不再对使用记录做GROUP BY扫描。
+ * 启动时从盈利日汇总表加载，写入使用记录的事务提交后累加，并通过Redis把增量发给其他节点。
+ * 加载期间收到的增量在加载完成后补记到新数据上，丢失的通知和直接修改数据库的情况由定时全量核对修正
+ */
+@Slf4j
+@Component
+public class RevenueColumnStore implements MessageListener {
+
+    private static final String CHANNEL = "revenue:changed";
+
+    // 盈利日汇总被整体重建时通知其他节点重新加载
+    private static final String RELOAD = "reload";
+
+    // 覆盖范围的上限，超出的日期视为错误数据不计入
+    private static final long MAX_SPAN_DAYS = 366L * 30;
+
+    // 本节点标识，忽略自己发布的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private UsageRecordMapper usageRecordMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 串行执行全量加载
+    private final Object loadLock = new Object();
+
+    // 由lock保护
+    private RevenueColumns columns = new RevenueColumns(LocalDate.now().toEpochDay(), false);
+
+    // 加载期间计入的增量，每项为{纪元日, 门店ID, 房间ID, 金额（分）, 次数}，不在加载时为null，由lock保护
+    private List<long[]> pending;
+
+    private volatile boolean ready;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        for (int attempt = 0; attempt < 3 && !ready; attempt++) {
+            reload();
+        }
+    }
+
+    /**
+     * 定时与盈利日汇总表全量核对
+     */
+    @Scheduled(fixedDelayString = "${revenue-store.reconcile-interval:900000}", initialDelayString = "${revenue-store.reconcile-interval:900000}")
+    public void reconcile() {
+        reload();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 计入一条使用记录的营收，与盈利日汇总的累加一一对应，并通知其他节点。
+     * 在事务中调用时提交后才计入，回滚时不计入
+     * @param startTime 开始时间，按所在日期归入
+     * @param storeId 门店ID，为null时记为0
+     * @param roomId 房间ID，为null时记为0
+     * @param amount 金额，扣除时为负数
+     * @param count 使用次数，扣除时为负数
+     */
+    public void record(Timestamp startTime, Integer storeId, Integer roomId, double amount, int count) {
+        if (startTime == null) {
+            return;
+        }
+        long day = startTime.toLocalDateTime().toLocalDate().toEpochDay();
+        int store = storeId != null ? storeId : 0;
+        int room = roomId != null ? roomId : 0;
+        long cents = Math.round(amount * 100);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(day, store, room, cents, count);
+                    send(day + ":" + store + ":" + room + ":" + cents + ":" + count);
+                }
+            });
+        } else {
+            apply(day, store, room, cents, count);
+            send(day + ":" + store + ":" + room + ":" + cents + ":" + count);
+        }
+    }
+
+    /**
+     * 盈利日汇总被整体重建后重新加载，并通知其他节点重新加载，在事务中调用时提交后才加载
+     */
+    public void reloadAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(RELOAD);
+                    reload();
+                }
+            });
+        } else {
+            send(RELOAD);
+            reload();
+        }
+    }
+
+    /**
+     * 接收其他节点提交的营收增量或重新加载通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split(":");
+        if (parts[0].equals(nodeId)) {
+            return;
+        }
+        try {
+            if (parts.length == 2 && RELOAD.equals(parts[1])) {
+                reload();
+            } else if (parts.length == 6) {
+                apply(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]),
+                        Long.parseLong(parts[4]), Integer.parseInt(parts[5]));
+            } else {
+                log.error("无效的营收变更通知: {}", body);
+            }
+        } catch (NumberFormatException e) {
+            log.error("无效的营收变更通知: {}", body);
+        }
+    }
+
+    /**
+     * 日期范围内的营收合计
+     * @param storeId 门店ID，为null时为全部门店
+     * @param roomId 房间ID，为null时为门店或全部门店的合计
+     * @param from 开始日期（包含），为null时从最早的数据开始
+     * @param to 结束日期（包含），为null时到今天
+     * @return totalProfit、recordCount
+     */
+    public Map<String, Object> total(Integer storeId, Integer roomId, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            long fromDay = fromDay(from);
+            long toDay = toDay(to);
+            long cents = 0;
+            long sessions = 0;
+            for (int column : columnsOf(storeId, roomId)) {
+                cents += columns.revenue(column, fromDay, toDay);
+                sessions += columns.sessions(column, fromDay, toDay);
+            }
+            return row(cents, sessions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日期范围内逐日的营收
+     * @return 每天一项：date、totalProfit、recordCount，按日期升序
+     */
+    public List<Map<String, Object>> daily(Integer storeId, Integer roomId, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            long fromDay = fromDay(from);
+            long toDay = toDay(to);
+            int[] selected = columnsOf(storeId, roomId);
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (long day = fromDay; day <= toDay; day++) {
+                long cents = 0;
+                long sessions = 0;
+                for (int column : selected) {
+                    cents += columns.revenue(column, day, day);
+                    sessions += columns.sessions(column, day, day);
+                }
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("date", LocalDate.ofEpochDay(day).toString());
+                item.putAll(row(cents, sessions));
+                result.add(item);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日期范围内各门店的营收，按营收降序
+     * @return 每个门店一项：storeId、totalProfit、recordCount
+     */
+    public List<Map<String, Object>> byStore(LocalDate from, LocalDate to, int limit) {
+        lock.readLock().lock();
+        try {
+            long fromDay = fromDay(from);
+            long toDay = toDay(to);
+            List<long[]> totals = new ArrayList<>();
+            for (int column = 0; column < columns.columnCount(); column++) {
+                if (columns.isStoreColumn(column)) {
+                    totals.add(new long[]{column, columns.revenue(column, fromDay, toDay), columns.sessions(column, fromDay, toDay)});
+                }
+            }
+            return ranked(totals, limit, false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 日期范围内各房间的营收，按营收降序
+     * @param storeId 门店ID，为null时为全部门店的房间
+     * @return 每个房间一项：storeId、roomId、totalProfit、recordCount
+     */
+    public List<Map<String, Object>> byRoom(Integer storeId, LocalDate from, LocalDate to, int limit) {
+        lock.readLock().lock();
+        try {
+            long fromDay = fromDay(from);
+            long toDay = toDay(to);
+            List<long[]> totals = new ArrayList<>();
+            for (int column = 0; column < columns.columnCount(); column++) {
+                if (columns.isRoomColumn(column) && (storeId == null || columns.storeOf(column) == storeId)) {
+                    totals.add(new long[]{column, columns.revenue(column, fromDay, toDay), columns.sessions(column, fromDay, toDay)});
+                }
+            }
+            return ranked(totals, limit, true);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从盈利日汇总表重新加载。加载期间计入的增量记在pending中，加载完成后补记到新数据上再替换。
+     * 读取开始前已提交、但通知在加载开始后才到达的增量会被重复计入，由下次核对修正
+     */
+    public void reload() {
+        synchronized (loadLock) {
+            lock.writeLock().lock();
+            try {
+                pending = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                load();
+            } finally {
+                lock.writeLock().lock();
+                try {
+                    pending = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private void load() {
+        long today = LocalDate.now().toEpochDay();
+        RevenueColumns loaded = new RevenueColumns(today, true);
+        long[] skipped = new long[1];
+        try {
+            // 汇总表按日期、门店、房间逐行读取，不在内存中保留结果集
+            usageRecordMapper.streamDailyProfit(context -> {
+                Map<String, Object> row = context.getResultObject();
+                long day = epochDay(row.get("statDate"));
+                if (Math.abs(day - today) > MAX_SPAN_DAYS) {
+                    skipped[0]++;
+                    return;
+                }
+                loaded.add(day, intValue(row.get("storeId")), intValue(row.get("roomId")),
+                        toCents(row.get("totalProfit")), intValue(row.get("recordCount")));
+            });
+        } catch (Exception e) {
+            log.error("加载营收列存失败: {}", e.getMessage());
+            return;
+        }
+        loaded.cover(today, today);
+        loaded.accumulate();
+        if (skipped[0] > 0) {
+            log.warn("盈利日汇总中有{}行日期超出范围，未计入营收列存", skipped[0]);
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (long[] delta : pending) {
+                loaded.add(delta[0], (int) delta[1], (int) delta[2], delta[3], (int) delta[4]);
+            }
+            if (ready) {
+                long minDay = Math.min(columns.firstDay(), loaded.firstDay());
+                long maxDay = Math.max(columns.lastDay(), loaded.lastDay());
+                long drift = columns.revenue(RevenueColumns.TOTAL, minDay, maxDay) - loaded.revenue(RevenueColumns.TOTAL, minDay, maxDay);
+                if (drift != 0) {
+                    log.warn("营收列存与盈利日汇总相差{}分，已修正", drift);
+                }
+            }
+            columns = loaded;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(long day, int storeId, int roomId, long cents, int count) {
+        long today = LocalDate.now().toEpochDay();
+        if (Math.abs(day - today) > MAX_SPAN_DAYS) {
+            log.warn("使用记录日期{}超出范围，未计入营收列存", LocalDate.ofEpochDay(day));
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            columns.add(day, storeId, roomId, cents, count);
+            if (pending != null) {
+                pending.add(new long[]{day, storeId, roomId, cents, count});
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void send(String delta) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + delta);
+        } catch (Exception e) {
+            log.error("发布营收变更通知失败: {}", e.getMessage());
+        }
+    }
+
+    // 查询涉及的列：合计列、门店列，或房间所在的各门店下的房间列
+    private int[] columnsOf(Integer storeId, Integer roomId) {
+        if (roomId == null) {
+            int column = storeId == null ? RevenueColumns.TOTAL : columns.findStoreColumn(storeId);
+            return column >= 0 ? new int[]{column} : new int[0];
+        }
+        if (storeId != null) {
+            int column = columns.findRoomColumn(storeId, roomId);
+            return column >= 0 ? new int[]{column} : new int[0];
+        }
+        // 房间调整过门店时在每个门店下各有一列
+        List<Integer> matched = new ArrayList<>();
+        for (int column = 0; column < columns.columnCount(); column++) {
+            if (columns.roomOf(column) == roomId) {
+                matched.add(column);
+            }
+        }
+        return matched.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private List<Map<String, Object>> ranked(List<long[]> totals, int limit, boolean withRoom) {
+        totals.sort(Comparator.comparingLong((long[] total) -> total[1]).reversed());
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (long[] total : totals) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (total[2] == 0 && total[1] == 0) {
+                continue;
+            }
+            int column = (int) total[0];
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("storeId", columns.storeOf(column));
+            if (withRoom) {
+                item.put("roomId", columns.roomOf(column));
+            }
+            item.putAll(row(total[1], total[2]));
+            result.add(item);
+        }
+        return result;
+    }
+
+    private long fromDay(LocalDate from) {
+        return from != null ? from.toEpochDay() : columns.firstDay();
+    }
+
+    private long toDay(LocalDate to) {
+        return to != null ? to.toEpochDay() : LocalDate.now().toEpochDay();
+    }
+
+    private static Map<String, Object> row(long cents, long sessions) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("totalProfit", BigDecimal.valueOf(cents, 2));
+        row.put("recordCount", sessions);
+        return row;
+    }
+
+    private static long epochDay(Object value) {
+        if (value instanceof LocalDate date) {
+            return date.toEpochDay();
+        }
+        if (value instanceof java.sql.Date date) {
+            return date.toLocalDate().toEpochDay();
+        }
+        return LocalDate.parse(value.toString()).toEpochDay();
+    }
+
+    private static int intValue(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static long toCents(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof BigDecimal decimal) {
+            return decimal.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+        }
+        return Math.round(((Number) value).doubleValue() * 100);
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.model.Room;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 房间空闲索引
+ * 按门店维护按room_id排序的房间ID数组、标记空闲房间的位图和各状态的房间数，
+ * 另有一个包含所有房间的全局索引，用于不指定门店的查询。
+ * 房间数据来自RoomCatalog，通过房间变更事件同步更新，可用房间查询完全在内存中完成
+ */
+@Component
+public class RoomAvailabilityIndex {
+
+    public static final String STATUS_FREE = "空闲";
+
+    @Autowired
+    private RoomCatalog roomCatalog;
+
+    // 门店ID -> 门店索引，索引对象不可变，变更时整体替换
+    private final Map<Integer, StoreSlot> storeSlots = new ConcurrentHashMap<>();
+
+    private volatile StoreSlot allSlot = StoreSlot.EMPTY;
+
+    public boolean isReady() {
+        return roomCatalog.isReady();
+    }
+
+    /**
+     * 分页查询空闲房间
+     * @param storeId 门店ID，为null时查询所有门店
+     * @param page 页码
+     * @param size 每页大小
+     * @return 分页结果
+     */
+    public Map<String, Object> pageAvailable(Integer storeId, int page, int size) {
+        StoreSlot slot = slot(storeId);
+        int offset = (page - 1) * size;
+        List<Room> records = new ArrayList<>(Math.max(0, Math.min(size, slot.free.cardinality() - offset)));
+        int skipped = 0;
+        for (int i = slot.free.nextSetBit(0); i >= 0 && records.size() < size; i = slot.free.nextSetBit(i + 1)) {
+            if (skipped++ < offset) {
+                continue;
+            }
+            Room room = roomCatalog.get(slot.roomIds[i]);
+            if (room != null) {
+                records.add(room);
+            }
+        }
+        int total = slot.countByStatus(STATUS_FREE);
+        Map<String, Object> result = new HashMap<>();
+        result.put("records", records);
+        result.put("total", total);
+        result.put("current", page);
+        result.put("size", size);
+        result.put("pages", (int) Math.ceil((double) total / size));
+        return result;
+    }
+
+    /**
+     * 游标分页查询空闲房间
+     * @param storeId 门店ID，为null时查询所有门店
+     * @param afterId 上一页最后一个房间ID，第一页为0
+     * @param limit 最多返回的房间数
+     * @return 房间ID大于afterId的空闲房间，按ID升序
+     */
+    public List<Room> availableAfter(Integer storeId, int afterId, int limit) {
+        StoreSlot slot = slot(storeId);
+        // 二分查找第一个大于afterId的位置，再沿位图向后取空闲房间
+        int position = Arrays.binarySearch(slot.roomIds, afterId);
+        position = position >= 0 ? position + 1 : -position - 1;
+        List<Room> records = new ArrayList<>(Math.min(limit, 64));
+        for (int i = slot.free.nextSetBit(position); i >= 0 && records.size() < limit; i = slot.free.nextSetBit(i + 1)) {
+            Room room = roomCatalog.get(slot.roomIds[i]);
+            if (room != null) {
+                records.add(room);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 统计空闲房间数
+     * @param storeId 门店ID，为null时统计所有门店
+     * @return 空闲房间数
+     */
+    public int countAvailable(Integer storeId) {
+        return slot(storeId).countByStatus(STATUS_FREE);
+    }
+
+    /**
+     * 统计房间总数
+     * @param storeId 门店ID，为null时统计所有门店
+     * @return 房间总数
+     */
+    public int countRooms(Integer storeId) {
+        return slot(storeId).roomIds.length;
+    }
+
+    /**
+     * 单个房间变更，状态变更只翻转位图中对应的位并调整计数，其他变更重建受影响的门店
+     */
+    @EventListener
+    public synchronized void onRoomChanged(RoomCatalog.RoomChangedEvent event) {
+        Room previous = event.getPrevious();
+        Room current = event.getCurrent();
+        if (previous != null && current != null && Objects.equals(previous.getStoreId(), current.getStoreId())) {
+            if (!Objects.equals(previous.getStatus(), current.getStatus())) {
+                Integer storeId = current.getStoreId();
+                if (storeId != null) {
+                    StoreSlot slot = storeSlots.get(storeId);
+                    if (slot != null) {
+                        storeSlots.put(storeId, slot.withStatus(current.getRoomId(), previous.getStatus(), current.getStatus()));
+                    }
+                }
+                allSlot = allSlot.withStatus(current.getRoomId(), previous.getStatus(), current.getStatus());
+            }
+            return;
+        }
+        // 新增、删除或更换门店
+        Collection<Room> rooms = roomCatalog.snapshots();
+        if (previous != null) {
+            rebuildSlot(previous.getStoreId(), rooms);
+        }
+        if (current != null) {
+            rebuildSlot(current.getStoreId(), rooms);
+        }
+        allSlot = StoreSlot.build(rooms);
+    }
+
+    /**
+     * 房间目录全量加载后重建所有门店的索引
+     */
+    @EventListener
+    public synchronized void onCatalogReloaded(RoomCatalog.RoomCatalogReloadedEvent event) {
+        Collection<Room> rooms = roomCatalog.snapshots();
+        Map<Integer, List<Room>> byStore = new HashMap<>();
+        for (Room room : rooms) {
+            if (room.getStoreId() != null) {
+                byStore.computeIfAbsent(room.getStoreId(), key -> new ArrayList<>()).add(room);
+            }
+        }
+        storeSlots.keySet().retainAll(byStore.keySet());
+        byStore.forEach((storeId, storeRooms) -> storeSlots.put(storeId, StoreSlot.build(storeRooms)));
+        allSlot = StoreSlot.build(rooms);
+    }
+
+    private StoreSlot slot(Integer storeId) {
+        if (storeId == null) {
+            return allSlot;
+        }
+        return storeSlots.getOrDefault(storeId, StoreSlot.EMPTY);
+    }
+
+    private void rebuildSlot(Integer storeId, Collection<Room> rooms) {
+        if (storeId == null) {
+            return;
+        }
+        List<Room> storeRooms = new ArrayList<>();
+        for (Room room : rooms) {
+            if (storeId.equals(room.getStoreId())) {
+                storeRooms.add(room);
+            }
+        }
+        if (storeRooms.isEmpty()) {
+            storeSlots.remove(storeId);
+        } else {
+            storeSlots.put(storeId, StoreSlot.build(storeRooms));
+        }
+    }
+
+    /**
+     * 单个门店（或全局）的不可变索引
+     */
+    private static final class StoreSlot {
+
+        private static final StoreSlot EMPTY = new StoreSlot(new int[0], new BitSet(), Collections.emptyMap());
+
+        // 按room_id升序排列的房间ID
+        private final int[] roomIds;
+        // 第i位表示roomIds[i]对应的房间空闲
+        private final BitSet free;
+        // 状态 -> 房间数
+        private final Map<String, Integer> statusCounts;
+
+        private StoreSlot(int[] roomIds, BitSet free, Map<String, Integer> statusCounts) {
+            this.roomIds = roomIds;
+            this.free = free;
+            this.statusCounts = statusCounts;
+        }
+
+        private static StoreSlot build(Collection<Room> rooms) {
+            List<Room> sorted = new ArrayList<>(rooms);
+            sorted.sort((a, b) -> Integer.compare(a.getRoomId(), b.getRoomId()));
+            int[] roomIds = new int[sorted.size()];
+            BitSet free = new BitSet(sorted.size());
+            Map<String, Integer> statusCounts = new HashMap<>();
+            for (int i = 0; i < sorted.size(); i++) {
+                Room room = sorted.get(i);
+                roomIds[i] = room.getRoomId();
+                if (STATUS_FREE.equals(room.getStatus())) {
+                    free.set(i);
+                }
+                if (room.getStatus() != null) {
+                    statusCounts.merge(room.getStatus(), 1, Integer::sum);
+                }
+            }
+            return new StoreSlot(roomIds, free, statusCounts);
+        }
+
+        private StoreSlot withStatus(int roomId, String oldStatus, String newStatus) {
+            int position = Arrays.binarySearch(roomIds, roomId);
+            if (position < 0) {
+                return this;
+            }
+            BitSet updatedFree = (BitSet) free.clone();
+            updatedFree.set(position, STATUS_FREE.equals(newStatus));
+            Map<String, Integer> updatedCounts = new HashMap<>(statusCounts);
+            if (oldStatus != null) {
+                updatedCounts.computeIfPresent(oldStatus, (status, count) -> count > 1 ? count - 1 : null);
+            }
+            if (newStatus != null) {
+                updatedCounts.merge(newStatus, 1, Integer::sum);
+            }
+            return new StoreSlot(roomIds, updatedFree, updatedCounts);
+        }
+
+        private int countByStatus(String status) {
+            return statusCounts.getOrDefault(status, 0);
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.mapper.RoomMapper;
+import com.example.springboot.model.Room;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+/**
+ * 房间目录本地缓存
+ * 在内存中保存所有房间的快照，并按名称、门店、状态、类型建立二级索引，
+ * 房间详情、名称唯一性检查和门店房间列表都直接从内存读取。
+ * 本节点的每次房间写操作都会通过Redis发布房间ID，其他节点收到后从数据库重新加载该房间，
+ * 另有定时全量核对兜底。每次变更都会发布RoomChangedEvent，供空闲索引等组件同步更新
+ */
+@Slf4j
+@Component
+public class RoomCatalog implements MessageListener {
+
+    private static final String CHANNEL = "room:changed";
+
+    // 本节点标识，忽略自己发布的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private RoomMapper roomMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // 房间ID -> 房间快照，快照不会被修改，变更时整体替换
+    private final Map<Integer, Room> rooms = new ConcurrentHashMap<>();
+
+    private final NavigableSet<Integer> allIds = new ConcurrentSkipListSet<>();
+
+    private final Map<String, Integer> byName = new ConcurrentHashMap<>();
+
+    private final Map<Integer, NavigableSet<Integer>> byStore = new ConcurrentHashMap<>();
+
+    private final Map<String, NavigableSet<Integer>> byStatus = new ConcurrentHashMap<>();
+
+    private final Map<String, NavigableSet<Integer>> byType = new ConcurrentHashMap<>();
+
+    private volatile boolean ready;
+
+    // 变更次数，用于判断从数据库加载期间是否有并发修改
+    private long modifications;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        for (int attempt = 0; attempt < 3 && !ready; attempt++) {
+            reload();
+        }
+    }
+
+    /**
+     * 定时与数据库全量核对，兜底丢失的失效消息和直接修改数据库的情况
+     */
+    @Scheduled(fixedDelayString = "${room-catalog.reconcile-interval:300000}", initialDelayString = "${room-catalog.reconcile-interval:300000}")
+    public void reconcile() {
+        reload();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 获取房间
+     * @param roomId 房间ID
+     * @return 房间副本，不存在返回null
+     */
+    public Room get(Integer roomId) {
+        Room room = roomId != null ? rooms.get(roomId) : null;
+        return room != null ? copy(room) : null;
+    }
+
+    /**
+     * 检查房间名称是否已被使用
+     * @param roomName 房间名称
+     * @return 是否已存在
+     */
+    public boolean nameExists(String roomName) {
+        return roomName != null && byName.containsKey(roomName);
+    }
+
+    /**
+     * 获取房间ID，按ID升序
+     * @param storeId 门店ID，为null时返回所有房间
+     * @return 只读的有序ID集合
+     */
+    public NavigableSet<Integer> idsOfStore(Integer storeId) {
+        if (storeId == null) {
+            return Collections.unmodifiableNavigableSet(allIds);
+        }
+        NavigableSet<Integer> ids = byStore.get(storeId);
+        return ids != null ? Collections.unmodifiableNavigableSet(ids) : Collections.emptyNavigableSet();
+    }
+
+    /**
+     * 按状态获取房间ID
+     * @param status 状态
+     * @return 只读的有序ID集合
+     */
+    public NavigableSet<Integer> idsWithStatus(String status) {
+        NavigableSet<Integer> ids = byStatus.get(status);
+        return ids != null ? Collections.unmodifiableNavigableSet(ids) : Collections.emptyNavigableSet();
+    }
+
+    /**
+     * 按类型获取房间ID
+     * @param roomType 房间类型
+     * @return 只读的有序ID集合
+     */
+    public NavigableSet<Integer> idsOfType(String roomType) {
+        NavigableSet<Integer> ids = byType.get(roomType);
+        return ids != null ? Collections.unmodifiableNavigableSet(ids) : Collections.emptyNavigableSet();
+    }
+
+    /**
+     * 按ID顺序取出房间副本
+     * @param ids 房间ID
+     * @param offset 跳过的数量
+     * @param limit 最多返回的数量
+     * @return 房间列表
+     */
+    public List<Room> list(Collection<Integer> ids, int offset, int limit) {
+        List<Room> result = new ArrayList<>(Math.min(limit, 64));
+        int skipped = 0;
+        for (Integer id : ids) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            Room room = rooms.get(id);
+            if (room != null) {
+                result.add(copy(room));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取所有房间快照，快照不可修改
+     * @return 房间快照
+     */
+    public Collection<Room> snapshots() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    /**
+     * 新增或整体更新房间，并通知其他节点
+     * @param room 写入数据库后的房间
+     */
+    public void upsert(Room room) {
+        if (room == null || room.getRoomId() == null) {
+            return;
+        }
+        apply(room.getRoomId(), copy(room));
+        publish(room.getRoomId());
+    }
+
+    /**
+     * 批量新增或整体更新房间，只发送一条通知
+     * @param updated 写入数据库后的房间
+     */
+    public void upsertAll(Collection<Room> updated) {
+        List<Integer> roomIds = new ArrayList<>(updated.size());
+        for (Room room : updated) {
+            if (room != null && room.getRoomId() != null) {
+                apply(room.getRoomId(), copy(room));
+                roomIds.add(room.getRoomId());
+            }
+        }
+        if (!roomIds.isEmpty()) {
+            send(roomIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+    }
+
+    /**
+     * 更新房间状态，并通知其他节点
+     * @param roomId 房间ID
+     * @param status 新状态
+     */
+    public void updateStatus(Integer roomId, String status) {
+        synchronized (this) {
+            Room current = rooms.get(roomId);
+            if (current != null) {
+                Room updated = copy(current);
+                updated.setStatus(status);
+                apply(roomId, updated);
+            }
+        }
+        publish(roomId);
+    }
+
+    /**
+     * 移除房间，并通知其他节点
+     * @param roomId 房间ID
+     */
+    public void remove(Integer roomId) {
+        apply(roomId, null);
+        publish(roomId);
+    }
+
+    /**
+     * 接收其他节点的房间变更通知，从数据库重新加载涉及的房间，一条通知可包含多个以逗号分隔的房间ID
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        try {
+            for (String roomId : body.substring(separator + 1).split(",")) {
+                refresh(Integer.valueOf(roomId));
+            }
+        } catch (NumberFormatException e) {
+            log.error("无效的房间变更通知: {}", body);
+        }
+    }
+
+    /**
+     * 从数据库重新加载所有房间
+     */
+    public void reload() {
+        long modificationsBeforeLoad;
+        synchronized (this) {
+            modificationsBeforeLoad = modifications;
+        }
+        List<Room> loaded;
+        try {
+            loaded = roomMapper.findAll();
+        } catch (Exception e) {
+            log.error("加载房间目录失败: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            // 加载期间有房间变更时放弃本次结果，避免用旧数据覆盖新数据
+            if (modifications != modificationsBeforeLoad) {
+                log.debug("加载房间目录期间房间发生变更，等待下次核对");
+                return;
+            }
+            Map<Integer, Room> fresh = new HashMap<>();
+            for (Room room : loaded) {
+                fresh.put(room.getRoomId(), room);
+            }
+            int drift = 0;
+            for (Integer roomId : new ArrayList<>(rooms.keySet())) {
+                if (!fresh.containsKey(roomId)) {
+                    index(roomId, null, false);
+                    drift++;
+                }
+            }
+            for (Room room : loaded) {
+                if (!sameRoom(rooms.get(room.getRoomId()), room)) {
+                    index(room.getRoomId(), copy(room), false);
+                    drift++;
+                }
+            }
+            if (ready && drift > 0) {
+                log.warn("房间目录与数据库存在{}处差异，已修正", drift);
+            }
+            ready = true;
+            eventPublisher.publishEvent(new RoomCatalogReloadedEvent());
+        }
+    }
+
+    private synchronized void apply(Integer roomId, Room room) {
+        modifications++;
+        index(roomId, room, true);
+    }
+
+    // 替换快照并维护二级索引，调用方需持有锁
+    private void index(Integer roomId, Room room, boolean notify) {
+        Room previous = room != null ? rooms.put(roomId, room) : rooms.remove(roomId);
+        if (previous != null) {
+            if (previous.getRoomName() != null) {
+                byName.remove(previous.getRoomName(), roomId);
+            }
+            removeFrom(byStore, previous.getStoreId(), roomId);
+            removeFrom(byStatus, previous.getStatus(), roomId);
+            removeFrom(byType, previous.getRoomType(), roomId);
+        }
+        if (room != null) {
+            allIds.add(roomId);
+            if (room.getRoomName() != null) {
+                byName.put(room.getRoomName(), roomId);
+            }
+            addTo(byStore, room.getStoreId(), roomId);
+            addTo(byStatus, room.getStatus(), roomId);
+            addTo(byType, room.getRoomType(), roomId);
+        } else {
+            allIds.remove(roomId);
+        }
+        if (notify) {
+            eventPublisher.publishEvent(new RoomChangedEvent(previous, room));
+        }
+    }
+
+    private void publish(Integer roomId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 在事务中修改时，提交后再通知其他节点，回滚时从数据库恢复本地快照
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        send(String.valueOf(roomId));
+                    } else {
+                        refresh(roomId);
+                    }
+                }
+            });
+            return;
+        }
+        send(String.valueOf(roomId));
+    }
+
+    private void send(String roomIds) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + roomIds);
+        } catch (Exception e) {
+            log.error("发布房间变更通知失败: {}", e.getMessage());
+        }
+    }
+
+    private void refresh(Integer roomId) {
+        try {
+            apply(roomId, roomMapper.findById(roomId));
+        } catch (Exception e) {
+            log.error("重新加载房间失败: {}", e.getMessage());
+        }
+    }
+
+    private static <K> void addTo(Map<K, NavigableSet<Integer>> index, K key, Integer roomId) {
+        if (key != null) {
+            index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(roomId);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableSet<Integer>> index, K key, Integer roomId) {
+        if (key == null) {
+            return;
+        }
+        NavigableSet<Integer> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(roomId);
+            if (ids.isEmpty()) {
+                index.remove(key, ids);
+            }
+        }
+    }
+
+    private static boolean sameRoom(Room a, Room b) {
+        return a != null
+                && Objects.equals(a.getRoomName(), b.getRoomName())
+                && Objects.equals(a.getRoomType(), b.getRoomType())
+                && Objects.equals(a.getMaxPlayers(), b.getMaxPlayers())
+                && Objects.equals(a.getMinPlayers(), b.getMinPlayers())
+                && Objects.equals(a.getPricePerHour(), b.getPricePerHour())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && Objects.equals(a.getImagePath(), b.getImagePath())
+                && Objects.equals(a.getStatus(), b.getStatus())
+                && Objects.equals(a.getPassword(), b.getPassword())
+                && Objects.equals(a.getStoreId(), b.getStoreId());
+    }
+
+    static Room copy(Room room) {
+        Room copy = new Room();
+        copy.setRoomId(room.getRoomId());
+        copy.setRoomName(room.getRoomName());
+        copy.setRoomType(room.getRoomType());
+        copy.setMaxPlayers(room.getMaxPlayers());
+        copy.setMinPlayers(room.getMinPlayers());
+        copy.setPricePerHour(room.getPricePerHour());
+        copy.setDescription(room.getDescription());
+        copy.setImagePath(room.getImagePath());
+        copy.setStatus(room.getStatus());
+        copy.setPassword(room.getPassword());
+        copy.setStoreId(room.getStoreId());
+        return copy;
+    }
+
+    /**
+     * 单个房间变更事件，在房间目录的锁内同步发布
+     * previous为null表示新增，current为null表示删除，两者都是共享快照，不能修改
+     */
+    public static final class RoomChangedEvent {
+        private final Room previous;
+        private final Room current;
+
+        private RoomChangedEvent(Room previous, Room current) {
+            this.previous = previous;
+            this.current = current;
+        }
+
+        public Room getPrevious() {
+            return previous;
+        }
+
+        public Room getCurrent() {
+            return current;
+        }
+    }
+
+    /**
+     * 全量加载完成事件
+     */
+    public static final class RoomCatalogReloadedEvent {
+    }
+}
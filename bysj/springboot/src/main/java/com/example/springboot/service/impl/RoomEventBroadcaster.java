@@ -0,0 +1,464 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.model.Room;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 房间状态推送
+ * 按门店向SSE客户端推送房间状态和空闲数量的变化，代替客户端轮询房间列表。
+ * 房间目录的变更事件先按房间合并，每个推送周期每个房间最多一条；
+ * 每个门店保留最近的若干条事件，客户端携带Last-Event-ID重连时补发错过的事件，
+ * 无法补发时（事件已被淘汰或来自其他节点、重启前）发送当前快照。
+ * 定时任务只把事件放入每个连接的有界队列，由专用的发送线程池写出，
+ * 写不过来的连接在队列满时断开，慢客户端不会阻塞定时任务或其他连接
+ */
+@Slf4j
+@Component
+public class RoomEventBroadcaster {
+
+    @Autowired
+    private RoomCatalog roomCatalog;
+
+    @Autowired
+    private RoomAvailabilityIndex roomAvailabilityIndex;
+
+    @Value("${room-events.timeout:1800000}")
+    private long timeout;
+
+    @Value("${room-events.max-connections:5000}")
+    private int maxConnections;
+
+    @Value("${room-events.replay-size:256}")
+    private int replaySize;
+
+    @Value("${room-events.client-queue-size:64}")
+    private int clientQueueSize;
+
+    @Value("${room-events.sender-threads:8}")
+    private int senderThreads;
+
+    // 本次启动的标识，事件ID为 启动标识.序号，用于识别其他节点或重启前的事件ID
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // 门店ID -> 推送通道
+    private final Map<Integer, StoreChannel> channels = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private ExecutorService senders;
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "room-events-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * 订阅门店的房间状态变化
+     * @param storeId 门店ID
+     * @param lastEventId 客户端最后收到的事件ID，首次连接为null
+     * @return SSE连接，连接数已满时返回null
+     */
+    public SseEmitter subscribe(Integer storeId, String lastEventId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeout);
+        StoreChannel channel = channel(storeId);
+        Client client = new Client(emitter, channel);
+        emitter.onCompletion(client::close);
+        emitter.onTimeout(client::close);
+        emitter.onError(error -> client.close());
+
+        // 在通道锁内放入补发的事件并登记，保证补发的事件与之后推送的事件之间不重不漏
+        synchronized (channel) {
+            // 先登记再放入事件，发送失败时close能正确减少连接数
+            channel.clients.add(client);
+            List<SentEvent> missed = channel.eventsAfter(lastEventId, epoch);
+            if (missed != null && missed.size() <= clientQueueSize) {
+                missed.forEach(client::enqueue);
+            } else {
+                client.enqueue(new SentEvent(channel.lastId(epoch), "snapshot", snapshot(storeId)));
+            }
+        }
+        return emitter;
+    }
+    /**
+     * 记录房间变更，等待下一个推送周期合并发送
+     */
+    @EventListener
+    public void onRoomChanged(RoomCatalog.RoomChangedEvent event) {
+        Room previous = event.getPrevious();
+        Room current = event.getCurrent();
+        if (previous != null && current != null && Objects.equals(previous.getStoreId(), current.getStoreId())
+                && Objects.equals(previous.getStatus(), current.getStatus())
+                && Objects.equals(previous.getRoomName(), current.getRoomName())) {
+            // 与推送内容无关的字段变更
+            return;
+        }
+        if (previous != null && previous.getStoreId() != null
+                && (current == null || !previous.getStoreId().equals(current.getStoreId()))) {
+            channel(previous.getStoreId()).pend(previous.getRoomId(), null);
+        }
+        if (current != null && current.getStoreId() != null) {
+            channel(current.getStoreId()).pend(current.getRoomId(), current);
+        }
+    }
+
+    /**
+     * 房间目录全量核对后在下一个推送周期发送快照，核对修正的差异不会产生单个房间的变更事件
+     */
+    @EventListener
+    public void onCatalogReloaded(RoomCatalog.RoomCatalogReloadedEvent event) {
+        channels.values().forEach(StoreChannel::resync);
+    }
+
+    /**
+     * 推送合并后的房间变化
+     */
+    @Scheduled(fixedDelayString = "${room-events.flush-interval:250}")
+    public void flush() {
+        channels.forEach((storeId, channel) -> {
+            if (channel.clients.isEmpty()) {
+                // 没有订阅者时只丢弃积累的变化，重连的客户端会收到快照
+                if (channel.takeResync() | !channel.drain().isEmpty()) {
+                    synchronized (channel) {
+                        channel.invalidate();
+                    }
+                }
+                return;
+            }
+            if (channel.takeResync()) {
+                channel.drain();
+                Map<String, Object> data = snapshot(storeId);
+                synchronized (channel) {
+                    channel.broadcast(new SentEvent(channel.nextId(epoch), "snapshot", data));
+                }
+                return;
+            }
+            Map<Integer, Room> pending = channel.drain();
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Map<String, Object>> rooms = new ArrayList<>(pending.size());
+            pending.forEach((roomId, room) -> {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("roomId", roomId);
+                if (room == null) {
+                    item.put("deleted", true);
+                } else {
+                    item.put("roomName", room.getRoomName());
+                    item.put("status", room.getStatus());
+                }
+                rooms.add(item);
+            });
+            Map<String, Object> data = counts(storeId);
+            data.put("rooms", rooms);
+            synchronized (channel) {
+                channel.broadcast(new SentEvent(channel.nextId(epoch), "rooms", data));
+            }
+        });
+    }
+
+    /**
+     * 定时发送心跳注释，保持空闲连接不被代理断开并及时发现已断开的客户端
+     */
+    @Scheduled(fixedDelayString = "${room-events.heartbeat-interval:15000}")
+    public void heartbeat() {
+        channels.values().forEach(channel -> {
+            for (Client client : channel.clients) {
+                client.enqueue(HEARTBEAT);
+            }
+        });
+    }
+
+    /**
+     * 当前连接数
+     */
+    public int connectionCount() {
+        return connections.get();
+    }
+
+    private StoreChannel channel(Integer storeId) {
+        return channels.computeIfAbsent(storeId, key -> new StoreChannel(replaySize));
+    }
+
+    private Map<String, Object> snapshot(Integer storeId) {
+        List<Map<String, Object>> rooms = new ArrayList<>();
+        for (Room room : roomCatalog.list(roomCatalog.idsOfStore(storeId), 0, Integer.MAX_VALUE)) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("roomId", room.getRoomId());
+            item.put("roomName", room.getRoomName());
+            item.put("status", room.getStatus());
+            rooms.add(item);
+        }
+        Map<String, Object> data = counts(storeId);
+        data.put("rooms", rooms);
+        return data;
+    }
+
+    private Map<String, Object> counts(Integer storeId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("storeId", storeId);
+        data.put("available", roomAvailabilityIndex.countAvailable(storeId));
+        data.put("total", roomAvailabilityIndex.countRooms(storeId));
+        return data;
+    }
+
+    private static void send(SseEmitter emitter, SentEvent event) throws IOException {
+        if (event == HEARTBEAT) {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        } else {
+            emitter.send(SseEmitter.event().id(event.id).name(event.name).data(event.data, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    /**
+     * 一个SSE连接及其待发送的事件
+     * 同一连接同时最多一个发送线程在写，队列满说明客户端读得太慢或已半开，直接断开，
+     * 客户端重连后携带Last-Event-ID补发或收到快照
+     */
+    private final class Client {
+
+        private final SseEmitter emitter;
+
+        private final StoreChannel channel;
+
+        // 由this保护
+        private final Deque<SentEvent> queue = new ArrayDeque<>();
+
+        // 是否已有发送线程在处理该连接，由this保护
+        private boolean draining;
+
+        private volatile boolean closed;
+
+        private Client(SseEmitter emitter, StoreChannel channel) {
+            this.emitter = emitter;
+            this.channel = channel;
+        }
+
+        // 放入事件，不做任何I/O，可在通道锁内调用
+        private void enqueue(SentEvent event) {
+            boolean submit;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (queue.size() >= clientQueueSize) {
+                    // 发送线程正阻塞在该连接上，由它在写完当前事件后结束连接
+                    log.debug("房间状态推送连接积压超过{}条，断开", clientQueueSize);
+                    close();
+                    return;
+                }
+                queue.addLast(event);
+                submit = !draining;
+                draining = true;
+            }
+            if (submit) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+
+        // 在发送线程上依次写出队列中的事件
+        private void drain() {
+            while (true) {
+                SentEvent event;
+                synchronized (this) {
+                    event = closed ? null : queue.pollFirst();
+                    if (event == null) {
+                        draining = false;
+                        queue.clear();
+                        break;
+                    }
+                }
+                try {
+                    send(emitter, event);
+                } catch (Exception e) {
+                    close();
+                    break;
+                }
+            }
+            if (closed) {
+                try {
+                    emitter.complete();
+                } catch (Exception e) {
+                    // 连接已由容器结束
+                }
+            }
+        }
+
+        private void close() {
+            closed = true;
+            if (channel.clients.remove(this)) {
+                connections.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 单个门店的推送通道
+     * 待推送的变化由pendingLock保护，房间目录的事件只需要这把锁；
+     * 序号、历史事件和放入连接队列在通道锁内进行，通道锁内不做网络I/O
+     */
+    private final class StoreChannel {
+
+        private final Set<Client> clients = new CopyOnWriteArraySet<>();
+
+        // 最近发送的事件，用于断线重连补发
+        private final Deque<SentEvent> history = new ArrayDeque<>();
+
+        private final int capacity;
+
+        private final Object pendingLock = new Object();
+
+        // 房间ID -> 最新状态，null表示已删除或移出该门店
+        private Map<Integer, Room> pending = new LinkedHashMap<>();
+
+        // 是否需要发送全量快照
+        private boolean resync;
+
+        private long sequence;
+
+        private StoreChannel(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void pend(Integer roomId, Room room) {
+            synchronized (pendingLock) {
+                pending.put(roomId, room);
+            }
+        }
+
+        private void resync() {
+            synchronized (pendingLock) {
+                resync = true;
+            }
+        }
+
+        private boolean takeResync() {
+            synchronized (pendingLock) {
+                boolean result = resync;
+                resync = false;
+                return result;
+            }
+        }
+
+        private Map<Integer, Room> drain() {
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) {
+                    return pending;
+                }
+                Map<Integer, Room> drained = pending;
+                pending = new LinkedHashMap<>();
+                return drained;
+            }
+        }
+
+        // 丢弃了未推送的变化，之前的事件ID不能再用于补发
+        private void invalidate() {
+            sequence++;
+            history.clear();
+        }
+
+        private String nextId(String epoch) {
+            return epoch + "." + (++sequence);
+        }
+
+        private String lastId(String epoch) {
+            return epoch + "." + sequence;
+        }
+
+        // 返回lastEventId之后的事件，无法补发时返回null
+        private List<SentEvent> eventsAfter(String lastEventId, String epoch) {
+            if (lastEventId == null || !lastEventId.startsWith(epoch + ".")) {
+                return null;
+            }
+            long lastSequence;
+            try {
+                lastSequence = Long.parseLong(lastEventId.substring(epoch.length() + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (lastSequence > sequence) {
+                return null;
+            }
+            long oldest = sequence - history.size() + 1;
+            if (lastSequence + 1 < oldest) {
+                return null;
+            }
+            List<SentEvent> missed = new ArrayList<>();
+            long position = oldest;
+            for (SentEvent event : history) {
+                if (position++ > lastSequence) {
+                    missed.add(event);
+                }
+            }
+            return missed;
+        }
+
+        private void broadcast(SentEvent event) {
+            history.addLast(event);
+            while (history.size() > capacity) {
+                history.removeFirst();
+            }
+            for (Client client : clients) {
+                client.enqueue(event);
+            }
+        }
+    }
+
+    // 心跳注释，不进入历史事件
+    private static final SentEvent HEARTBEAT = new SentEvent(null, null, null);
+
+    private static final class SentEvent {
+        private final String id;
+        private final String name;
+        private final Map<String, Object> data;
+
+        private SentEvent(String id, String name, Map<String, Object> data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+    }
+}
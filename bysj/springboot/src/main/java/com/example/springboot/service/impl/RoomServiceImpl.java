@@ -3,15 +3,26 @@ package com.example.springboot.service.impl;
 import com.example.springboot.mapper.RoomMapper;
 import com.example.springboot.mapper.UsageRecordMapper;
 import com.example.springboot.model.Room;
-import com.example.springboot.model.UsageRecord;
-import java.util.Date;
 import com.example.springboot.service.RoomService;
 import com.example.springboot.common.Result;
+import com.example.springboot.util.PageCursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -25,13 +36,30 @@ public class RoomServiceImpl implements RoomService {
     @Autowired
     private UsageRecordMapper usageRecordMapper;
 
+    @Autowired
+    private RoomAvailabilityIndex roomAvailabilityIndex;
+
+    @Autowired
+    private RoomCatalog roomCatalog;
+
+    @Autowired
+    private BookingIndex bookingIndex;
+
     @Override
     public Result<?> getAllRooms(int page, int size) {
         try {
             // 计算偏移量
             int offset = (page - 1) * size;
-            List<Room> rooms = roomMapper.findAllWithPagination(offset, size);
-            int total = roomMapper.countAllRooms();
+            List<Room> rooms;
+            int total;
+            if (roomCatalog.isReady()) {
+                // 本地房间目录加载完成后直接在内存中分页
+                rooms = roomCatalog.list(roomCatalog.idsOfStore(null), offset, size);
+                total = roomAvailabilityIndex.countRooms(null);
+            } else {
+                rooms = roomMapper.findAllWithPagination(offset, size);
+                total = roomMapper.countAllRooms();
+            }
             
             // 创建分页结果
             java.util.Map<String, Object> result = new java.util.HashMap<>();
@@ -50,7 +78,7 @@ public class RoomServiceImpl implements RoomService {
     @Override
     public Result<Room> getRoomById(Integer roomId) {
         try {
-            Room room = roomMapper.findById(roomId);
+            Room room = roomCatalog.isReady() ? roomCatalog.get(roomId) : roomMapper.findById(roomId);
             if (room == null) {
                 return Result.error("房间不存在");
             }
@@ -63,10 +91,10 @@ public class RoomServiceImpl implements RoomService {
     @Override
     public Result<Room> addRoom(Room room) {
         try {
-            // 验证房间名称是否已存在
-            List<Room> existingRooms = roomMapper.findAll();
-            boolean nameExists = existingRooms.stream()
-                    .anyMatch(r -> r.getRoomName().equals(room.getRoomName()));
+            // 验证房间名称是否已存在，优先使用本地房间目录的名称索引
+            boolean nameExists = roomCatalog.isReady()
+                    ? roomCatalog.nameExists(room.getRoomName())
+                    : roomMapper.findAll().stream().anyMatch(r -> r.getRoomName().equals(room.getRoomName()));
             if (nameExists) {
                 return Result.error("房间名称已存在");
             }
@@ -75,6 +103,7 @@ public class RoomServiceImpl implements RoomService {
             room.setStatus("空闲");
 
             roomMapper.insert(room);
+            roomCatalog.upsert(room);
             return Result.success(room);
         } catch (Exception e) {
             return Result.error("添加房间失败: " + e.getMessage());
@@ -90,6 +119,8 @@ public class RoomServiceImpl implements RoomService {
             }
 
             roomMapper.update(room);
+            // 以数据库中的完整记录更新房间目录，请求体可能缺少部分字段
+            roomCatalog.upsert(roomMapper.findById(room.getRoomId()));
             return Result.success(room);
         } catch (Exception e) {
             return Result.error("更新房间失败: " + e.getMessage());
@@ -110,6 +141,7 @@ public class RoomServiceImpl implements RoomService {
             }
 
             roomMapper.deleteById(roomId);
+            roomCatalog.remove(roomId);
             return Result.success();
         } catch (Exception e) {
             return Result.error("删除房间失败: " + e.getMessage());
@@ -119,6 +151,11 @@ public class RoomServiceImpl implements RoomService {
     @Override
     public Result<?> getAvailableRooms(Integer storeId, int page, int size) {
         try {
+            // 空闲索引加载完成后直接在内存中分页，不再查询数据库
+            if (roomAvailabilityIndex.isReady()) {
+                return Result.success(roomAvailabilityIndex.pageAvailable(storeId, page, size));
+            }
+
             // 计算偏移量
             int offset = (page - 1) * size;
             List<Room> rooms = roomMapper.findAvailableRoomsWithPagination(storeId, offset, size);
@@ -141,26 +178,25 @@ public class RoomServiceImpl implements RoomService {
     @Override
     public Result<Void> updateRoomStatus(Integer roomId, String status) {
         try {
-            // 验证房间是否存在
-            Room existingRoom = roomMapper.findById(roomId);
-            if (existingRoom == null) {
-                return Result.error("房间不存在");
-            }
-
             // 验证状态值是否有效
             if (status == null || (!status.equals("空闲") && !status.equals("使用中"))) {
                 return Result.error("无效的房间状态");
             }
 
-            // 更新状态
-            int result = roomMapper.updateStatus(roomId, status);
+            // 按预期的原状态原子更新，不再先查询再无条件写入
+            String expected = status.equals("空闲") ? "使用中" : "空闲";
+            int result = roomMapper.compareAndSetStatus(roomId, expected, status);
             if (result == 0) {
-                return Result.error("更新房间状态失败");
+                Room existingRoom = roomMapper.findById(roomId);
+                if (existingRoom == null) {
+                    return Result.error("房间不存在");
+                }
+                if (status.equals(existingRoom.getStatus())) {
+                    return Result.success();
+                }
+                return Result.error(409, "房间状态已被修改，请刷新后重试");
             }
-            
-            // 清除Redis缓存
-            redisTemplate.delete("rooms:all");
-            redisTemplate.delete("rooms:id:" + roomId);
+            roomCatalog.updateStatus(roomId, status);
             
             return Result.success();
         } catch (Exception e) {
@@ -173,8 +209,15 @@ public class RoomServiceImpl implements RoomService {
         try {
             // 计算偏移量
             int offset = (page - 1) * size;
-            List<Room> rooms = roomMapper.findByStoreIdWithPagination(storeId, offset, size);
-            int total = roomMapper.countRoomsByStoreId(storeId);
+            List<Room> rooms;
+            int total;
+            if (roomCatalog.isReady()) {
+                rooms = roomCatalog.list(roomCatalog.idsOfStore(storeId), offset, size);
+                total = roomAvailabilityIndex.countRooms(storeId);
+            } else {
+                rooms = roomMapper.findByStoreIdWithPagination(storeId, offset, size);
+                total = roomMapper.countRoomsByStoreId(storeId);
+            }
             
             // 创建分页结果
             java.util.Map<String, Object> result = new java.util.HashMap<>();
@@ -190,35 +233,217 @@ public class RoomServiceImpl implements RoomService {
         }
     }
 
+    @Override
+    public Result<?> getAllRoomsByCursor(String cursor, int size) {
+        if (size < 1) {
+            return Result.error("每页大小无效");
+        }
+        try {
+            int afterId = PageCursor.decode("all", cursor);
+            if (roomCatalog.isReady()) {
+                List<Room> rooms = roomCatalog.list(roomCatalog.idsOfStore(null).tailSet(afterId, false), 0, size + 1);
+                return Result.success(cursorPage("all", rooms, size, roomAvailabilityIndex.countRooms(null)));
+            }
+            List<Room> rooms = roomMapper.findAllAfter(afterId, size + 1);
+            return Result.success(cursorPage("all", rooms, size, roomMapper.countAllRooms()));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            return Result.error("获取房间列表失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Result<?> getAvailableRoomsByCursor(Integer storeId, String cursor, int size) {
+        if (size < 1) {
+            return Result.error("每页大小无效");
+        }
+        try {
+            String scope = "available:" + storeId;
+            int afterId = PageCursor.decode(scope, cursor);
+            if (roomAvailabilityIndex.isReady()) {
+                List<Room> rooms = roomAvailabilityIndex.availableAfter(storeId, afterId, size + 1);
+                return Result.success(cursorPage(scope, rooms, size, roomAvailabilityIndex.countAvailable(storeId)));
+            }
+            List<Room> rooms = roomMapper.findAvailableRoomsAfter(storeId, afterId, size + 1);
+            return Result.success(cursorPage(scope, rooms, size, roomMapper.countAvailableRooms(storeId)));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            return Result.error("获取可用房间失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Result<?> getRoomsByStoreIdByCursor(Integer storeId, String cursor, int size) {
+        if (size < 1) {
+            return Result.error("每页大小无效");
+        }
+        try {
+            String scope = "store:" + storeId;
+            int afterId = PageCursor.decode(scope, cursor);
+            if (roomCatalog.isReady()) {
+                List<Room> rooms = roomCatalog.list(roomCatalog.idsOfStore(storeId).tailSet(afterId, false), 0, size + 1);
+                return Result.success(cursorPage(scope, rooms, size, roomAvailabilityIndex.countRooms(storeId)));
+            }
+            List<Room> rooms = roomMapper.findByStoreIdAfter(storeId, afterId, size + 1);
+            return Result.success(cursorPage(scope, rooms, size, roomMapper.countRoomsByStoreId(storeId)));
+        } catch (IllegalArgumentException e) {
+            return Result.error(e.getMessage());
+        } catch (Exception e) {
+            return Result.error("获取门店房间失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Result<?> findEarliestSlots(Integer storeId, int minutes, int players, String roomType, long from, long to, int limit) {
+        if (minutes < 1 || limit < 1 || players < 1) {
+            return Result.error("时长、人数和数量必须大于0");
+        }
+        if (to <= from) {
+            return Result.error("结束时间必须晚于开始时间");
+        }
+        if (!roomCatalog.isReady() || !bookingIndex.isReady()) {
+            return Result.error(503, "房间和预订数据正在加载，请稍后重试");
+        }
+        long duration = minutes * 60_000L;
+        // 按开始时间保留最早的limit个，堆顶为当前最晚的一个
+        PriorityQueue<long[]> earliest = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]));
+        for (Room room : roomCatalog.list(roomCatalog.idsOfStore(storeId), 0, Integer.MAX_VALUE)) {
+            if ((room.getMinPlayers() != null && players < room.getMinPlayers())
+                    || (room.getMaxPlayers() != null && players > room.getMaxPlayers())
+                    || (roomType != null && !roomType.isEmpty() && !roomType.equals(room.getRoomType()))) {
+                continue;
+            }
+            // 已有limit个结果时只需查找开始时间早于其中最晚一个的时间段
+            long bound = earliest.size() < limit ? to : Math.min(to, earliest.peek()[0] - 1 + duration);
+            long start = bookingIndex.earliestFree(room.getRoomId(), from, bound, duration);
+            if (start < 0) {
+                continue;
+            }
+            earliest.offer(new long[]{start, room.getRoomId()});
+            if (earliest.size() > limit) {
+                earliest.poll();
+            }
+        }
+        List<long[]> sorted = new ArrayList<>(earliest);
+        sorted.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        List<java.util.Map<String, Object>> slots = new ArrayList<>(sorted.size());
+        for (long[] slot : sorted) {
+            Room room = roomCatalog.get((int) slot[1]);
+            if (room == null) {
+                continue;
+            }
+            java.util.Map<String, Object> item = new java.util.LinkedHashMap<>();
+            item.put("roomId", room.getRoomId());
+            item.put("roomName", room.getRoomName());
+            item.put("roomType", room.getRoomType());
+            item.put("pricePerHour", room.getPricePerHour());
+            item.put("startTime", new Timestamp(slot[0]));
+            item.put("endTime", new Timestamp(slot[0] + duration));
+            slots.add(item);
+        }
+        return Result.success(slots);
+    }
+
+    // 多取一条用于判断是否还有下一页，nextCursor为null表示已到最后一页
+    private java.util.Map<String, Object> cursorPage(String scope, List<Room> rooms, int size, int total) {
+        boolean hasMore = rooms.size() > size;
+        List<Room> records = hasMore ? rooms.subList(0, size) : rooms;
+        java.util.Map<String, Object> result = new java.util.HashMap<>();
+        result.put("records", records);
+        result.put("total", total);
+        result.put("size", size);
+        result.put("nextCursor", hasMore ? PageCursor.encode(scope, records.get(records.size() - 1).getRoomId()) : null);
+        return result;
+    }
+
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Override
+    public boolean claimRoom(Integer roomId) {
+        if (roomMapper.compareAndSetStatus(roomId, "空闲", "使用中") == 0) {
+            return false;
+        }
+        // 事务提交后才通知其他节点，回滚时恢复本地快照
+        roomCatalog.updateStatus(roomId, "使用中");
+        return true;
+    }
+
+    @Override
+    public boolean releaseRoom(Integer roomId) {
+        // 生成6位随机数密码
+        int randomPassword = ThreadLocalRandom.current().nextInt(100000, 1000000);
+        if (roomMapper.releaseRoom(roomId, randomPassword) == 0) {
+            return false;
+        }
+        Room room = roomCatalog.get(roomId);
+        if (room == null) {
+            room = roomMapper.findById(roomId);
+        }
+        if (room != null) {
+            room.setStatus("空闲");
+            room.setPassword(randomPassword);
+            roomCatalog.upsert(room);
+        }
+        log.info("房间ID: {} 使用时间已结束，状态已更新为空闲，密码已重置为: {}", roomId, randomPassword);
+        return true;
+    }
+
     @Override
     public void checkAndUpdateExpiredRooms() {
         try {
-            // 1. 查询所有状态为"使用中"的房间
-            List<Room> occupiedRooms = roomMapper.findByStatus("使用中");
-
-            // 2. 检查每个房间的使用记录
-            for (Room room : occupiedRooms) {
-                // 获取该房间最新的使用记录
-                UsageRecord latestRecord = usageRecordMapper.findLatestByRoomId(room.getRoomId());
-
-                if (latestRecord != null && latestRecord.getEndTime().before(new Date())) {
-                    // 3. 使用时间已结束，更新房间状态和密码
-                    room.setStatus("空闲");
-                    // 生成6位随机数密码
-                    int randomPassword = (int) (Math.random() * 900000) + 100000;
-                    room.setPassword(randomPassword);
-                    roomMapper.update(room);
-
-                    // 4. 更新 Redis 缓存中的房间信息
-                    String redisKey = "room:" + room.getRoomId();
-                    redisTemplate.opsForValue().set(redisKey, room);
-
-                    log.info("房间ID: {} 使用时间已结束，状态已更新为空闲，密码已重置为: {}", room.getRoomId(), randomPassword);
+            // 1. 一次查询出所有使用中且最后一条使用记录已结束的房间
+            List<Room> expiredRooms = roomMapper.findExpiredOccupiedRooms(new Timestamp(System.currentTimeMillis()));
+            if (expiredRooms.isEmpty()) {
+                return;
+            }
+
+            // 2. 通过批量执行器一次性释放房间并重置密码，仍为使用中的房间才会被更新
+            for (Room room : expiredRooms) {
+                room.setStatus("空闲");
+                room.setPassword(ThreadLocalRandom.current().nextInt(100000, 1000000));
+            }
+            List<Room> released = new ArrayList<>(expiredRooms.size());
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                RoomMapper batchMapper = session.getMapper(RoomMapper.class);
+                for (Room room : expiredRooms) {
+                    batchMapper.releaseRoom(room.getRoomId(), room.getPassword());
+                }
+                int index = 0;
+                for (BatchResult batchResult : session.flushStatements()) {
+                    for (int count : batchResult.getUpdateCounts()) {
+                        // 驱动未返回具体行数时按成功处理
+                        if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                            released.add(expiredRooms.get(index));
+                        }
+                        index++;
+                    }
                 }
+                session.commit();
+            }
+            if (released.isEmpty()) {
+                return;
             }
+
+            // 3. 更新房间目录，并通过管道一次性写入Redis中的房间信息
+            roomCatalog.upsertAll(released);
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) {
+                    for (Room room : released) {
+                        operations.opsForValue().set("room:" + room.getRoomId(), room);
+                    }
+                    return null;
+                }
+            });
+            log.info("已释放{}个使用时间已结束的房间: {}", released.size(),
+                    released.stream().map(Room::getRoomId).collect(Collectors.toList()));
         } catch (Exception e) {
             log.error("检查过期房间状态失败: {}", e.getMessage());
         }
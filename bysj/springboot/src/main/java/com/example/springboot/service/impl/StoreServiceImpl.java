@@ -4,8 +4,8 @@ import com.example.springboot.common.Result;
 import com.example.springboot.mapper.StoreMapper;
 import com.example.springboot.model.Store;
 import com.example.springboot.service.StoreService;
+import com.example.springboot.util.TaggedCache;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -16,47 +16,24 @@ public class StoreServiceImpl implements StoreService {
     private StoreMapper storeMapper;
     
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private TaggedCache taggedCache;
     
     private static final String STORE_CACHE_PREFIX = "store:";
     private static final String STORE_LIST_CACHE_KEY = "store:list";
 
+    // 门店列表的标签，单个门店使用TaggedCache.store
+    private static final String STORE_LIST_TAG = "stores";
+
     @Override
     public List<Store> getAllStores() {
-        // 先从Redis缓存中获取
-        List<Store> cachedStores = (List<Store>) redisTemplate.opsForValue().get(STORE_LIST_CACHE_KEY);
-        if (cachedStores != null) {
-            return cachedStores;
-        }
-        
-        // 缓存中没有，从数据库查询
-        List<Store> stores = storeMapper.findAll();
-        
-        // 将结果存入Redis缓存，设置过期时间为30分钟
-        redisTemplate.opsForValue().set(STORE_LIST_CACHE_KEY, stores, 30, TimeUnit.MINUTES);
-        
-        return stores;
+        // 缓存30分钟，门店增删改时按标签失效
+        return taggedCache.getOrLoad(STORE_LIST_CACHE_KEY, 30, TimeUnit.MINUTES, storeMapper::findAll, STORE_LIST_TAG);
     }
 
     @Override
     public Store getStoreById(Integer storeId) {
-        String cacheKey = STORE_CACHE_PREFIX + storeId;
-        
-        // 先从Redis缓存中获取
-        Store cachedStore = (Store) redisTemplate.opsForValue().get(cacheKey);
-        if (cachedStore != null) {
-            return cachedStore;
-        }
-        
-        // 缓存中没有，从数据库查询
-        Store store = storeMapper.findById(storeId);
-        
-        if (store != null) {
-            // 将结果存入Redis缓存，设置过期时间为30分钟
-            redisTemplate.opsForValue().set(cacheKey, store, 30, TimeUnit.MINUTES);
-        }
-        
-        return store;
+        return taggedCache.getOrLoad(STORE_CACHE_PREFIX + storeId, 30, TimeUnit.MINUTES,
+                () -> storeMapper.findById(storeId), STORE_LIST_TAG, TaggedCache.store(storeId));
     }
 
     @Override
@@ -64,7 +41,7 @@ public class StoreServiceImpl implements StoreService {
         storeMapper.insert(store);
         
         // 清除店铺列表缓存
-        redisTemplate.delete(STORE_LIST_CACHE_KEY);
+        taggedCache.invalidate(STORE_LIST_TAG);
         return null;
     }
 
@@ -72,13 +49,8 @@ public class StoreServiceImpl implements StoreService {
     public Result<?> updateStore(Store store) {
         storeMapper.update(store);
         
-        // 清除店铺列表缓存
-        redisTemplate.delete(STORE_LIST_CACHE_KEY);
-        
-        // 清除特定店铺的缓存
-        if (store.getStoreId() != null) {
-            redisTemplate.delete(STORE_CACHE_PREFIX + store.getStoreId());
-        }
+        // 清除店铺列表和该店铺相关的缓存，包括带有门店名称的使用记录和盈利报表
+        taggedCache.invalidate(STORE_LIST_TAG, TaggedCache.store(store.getStoreId()));
         return null;
     }
 
@@ -86,11 +58,8 @@ public class StoreServiceImpl implements StoreService {
     public Result<?> deleteStore(Integer storeId) {
         storeMapper.delete(storeId);
         
-        // 清除店铺列表缓存
-        redisTemplate.delete(STORE_LIST_CACHE_KEY);
-        
-        // 清除特定店铺的缓存
-        redisTemplate.delete(STORE_CACHE_PREFIX + storeId);
+        // 清除店铺列表和该店铺相关的缓存
+        taggedCache.invalidate(STORE_LIST_TAG, TaggedCache.store(storeId));
         return null;
     }
-}
\ No newline at end of file
+}
@@ -1,20 +1,50 @@
 package com.example.springboot.service.impl;
 
+import com.example.springboot.mapper.RoomMapper;
 import com.example.springboot.mapper.UsageRecordMapper;
 import com.example.springboot.model.UsageRecord;
+import com.example.springboot.service.RoomService;
 import com.example.springboot.service.UsageRecordService;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class UsageRecordServiceImpl implements UsageRecordService {
 
+    // 开始时间在此范围内的预订视为立即使用，创建时占用房间
+    private static final long IMMEDIATE_START_MILLIS = 60000;
+
+    // 营收按天分组时的最大天数
+    private static final int MAX_ANALYTICS_DAYS = 3660;
+
     @Autowired
     private UsageRecordMapper usageRecordMapper;
 
+    @Autowired
+    private RoomMapper roomMapper;
+
+    @Autowired
+    private BookingIndex bookingIndex;
+
+    @Autowired
+    private RoomService roomService;
+
+    @Autowired
+    private RevenueColumnStore revenueColumnStore;
+
     @Override
     public List<Map<String, Object>> getDailyProfit(Integer storeId, String startDate, String endDate) {
         return usageRecordMapper.getDailyProfit(storeId, startDate, endDate);
@@ -30,6 +60,42 @@ public class UsageRecordServiceImpl implements UsageRecordService {
         return usageRecordMapper.getYearlyProfit(storeId);
     }
 
+    @Override
+    public Map<String, Object> getRevenueAnalytics(Integer storeId, Integer roomId, LocalDate startDate, LocalDate endDate,
+                                                   String groupBy, int limit) {
+        if (!revenueColumnStore.isReady()) {
+            throw new IllegalStateException("营收数据正在加载，请稍后重试");
+        }
+        LocalDate end = endDate != null ? endDate : LocalDate.now();
+        if (startDate != null && startDate.isAfter(end)) {
+            throw new IllegalArgumentException("开始日期不能晚于结束日期");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startDate", startDate);
+        result.put("endDate", end);
+        result.putAll(revenueColumnStore.total(storeId, roomId, startDate, end));
+        switch (groupBy) {
+            case "none":
+                break;
+            case "day":
+                // 逐日结果的大小与天数成正比，需指定开始日期
+                if (startDate == null || ChronoUnit.DAYS.between(startDate, end) >= MAX_ANALYTICS_DAYS) {
+                    throw new IllegalArgumentException("按天分组时需指定开始日期，且范围不超过" + MAX_ANALYTICS_DAYS + "天");
+                }
+                result.put("items", revenueColumnStore.daily(storeId, roomId, startDate, end));
+                break;
+            case "store":
+                result.put("items", revenueColumnStore.byStore(startDate, end, limit));
+                break;
+            case "room":
+                result.put("items", revenueColumnStore.byRoom(storeId, startDate, end, limit));
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的分组方式: " + groupBy);
+        }
+        return result;
+    }
+
 
 
     @Override
@@ -53,18 +119,143 @@ public class UsageRecordServiceImpl implements UsageRecordService {
     }
 
     @Override
+    @Transactional
     public int save(UsageRecord usageRecord) {
-        return usageRecordMapper.insert(usageRecord);
+        return bookingIndex.callLocked(usageRecord.getRoomId(), null, () -> {
+            checkConflicts(usageRecord, null);
+            // 立即使用的预订在同一事务中按状态条件占用房间，多个节点同时预订同一房间时只有一个成功
+            if (startsNow(usageRecord) && !roomService.claimRoom(usageRecord.getRoomId())) {
+                throw new IllegalStateException("房间已被占用");
+            }
+            int result = usageRecordMapper.insert(usageRecord);
+            addProfit(usageRecord, 1);
+            bookingIndex.put(usageRecord);
+            return result;
+        });
     }
 
     @Override
+    @Transactional
     public int update(UsageRecord usageRecord) {
-        return usageRecordMapper.update(usageRecord);
+        UsageRecord existing = usageRecordMapper.findById(usageRecord.getRecordId());
+        if (existing == null) {
+            return usageRecordMapper.update(usageRecord);
+        }
+        if (usageRecord.getRoomId() == null) {
+            // 未指定房间时沿用原房间，仍需检查冲突并更新预订索引
+            usageRecord.setRoomId(existing.getRoomId());
+        }
+        if (usageRecord.getRoomId() == null) {
+            // 原记录也没有房间，不再占用任何房间的时间段
+            int result = usageRecordMapper.update(usageRecord);
+            moveProfit(existing, usageRecord, result);
+            if (result > 0) {
+                bookingIndex.remove(usageRecord.getRecordId());
+            }
+            return result;
+        }
+        return bookingIndex.callLocked(usageRecord.getRoomId(), existing.getRoomId(), () -> {
+            checkConflicts(usageRecord, usageRecord.getRecordId());
+            int result = usageRecordMapper.update(usageRecord);
+            moveProfit(existing, usageRecord, result);
+            if (result > 0) {
+                bookingIndex.put(usageRecord);
+            }
+            return result;
+        });
     }
 
     @Override
+    @Transactional
     public int delete(Integer recordId) {
-        return usageRecordMapper.deleteById(recordId);
+        UsageRecord existing = usageRecordMapper.findById(recordId);
+        int result = usageRecordMapper.deleteById(recordId);
+        if (result > 0) {
+            if (existing != null) {
+                addProfit(existing, -1);
+            }
+            bookingIndex.remove(recordId);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public int rebuildProfitRollup(String startDate, String endDate) {
+        usageRecordMapper.deleteDailyProfit(startDate, endDate);
+        int rows = usageRecordMapper.rebuildDailyProfit(startDate, endDate);
+        revenueColumnStore.reloadAfterCommit();
+        return rows;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportRecords(Integer storeId, Integer userId, Timestamp startTime, Timestamp endTime, Consumer<UsageRecord> consumer) {
+        // 游标依赖当前事务中的数据库会话，需在方法返回前遍历完毕
+        long count = 0;
+        try (Cursor<UsageRecord> cursor = usageRecordMapper.streamForExport(storeId, userId, startTime, endTime)) {
+            for (UsageRecord record : cursor) {
+                consumer.accept(record);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    @Override
+    public List<Map<String, Object>> findConflicts(Integer roomId, Timestamp startTime, Timestamp endTime, Integer excludeRecordId) {
+        List<Map<String, Object>> ranges = new ArrayList<>();
+        for (UsageRecord record : bookingIndex.conflicts(roomId, startTime, endTime, excludeRecordId)) {
+            Map<String, Object> range = new LinkedHashMap<>();
+            range.put("startTime", record.getStartTime());
+            range.put("endTime", record.getEndTime());
+            ranges.add(range);
+        }
+        return ranges;
+    }
+
+    // 在写入使用记录的同一事务中累加盈利日汇总，提交后同步计入营收列存，sign为1时计入，为-1时扣除
+    private void addProfit(UsageRecord usageRecord, int sign) {
+        if (usageRecord.getStartTime() == null) {
+            return;
+        }
+        double amount = usageRecord.getTotalPrice() != null ? usageRecord.getTotalPrice() : 0;
+        usageRecordMapper.addDailyProfit(usageRecord.getStartTime(), usageRecord.getStoreId(), usageRecord.getRoomId(),
+                sign * amount, sign);
+        revenueColumnStore.record(usageRecord.getStartTime(), usageRecord.getStoreId(), usageRecord.getRoomId(),
+                sign * amount, sign);
+    }
+
+    // 修改记录后从原日期、门店和房间扣除，计入新的日期、门店和房间
+    private void moveProfit(UsageRecord existing, UsageRecord updated, int result) {
+        if (result > 0) {
+            addProfit(existing, -1);
+            addProfit(updated, 1);
+        }
+    }
+
+    private static boolean startsNow(UsageRecord usageRecord) {
+        return usageRecord.getStartTime() == null
+                || usageRecord.getStartTime().getTime() <= System.currentTimeMillis() + IMMEDIATE_START_MILLIS;
+    }
+
+    // 时间段与该房间已有预订重叠时拒绝写入，调用方需持有房间锁并处于事务中。
+    // 本地索引只能看到其他节点已提交并通知到的预订，先用它快速拒绝，
+    // 再锁定房间行并查询数据库，多个节点同时预订同一房间时在行锁上串行，后到的能看到先提交的记录
+    private void checkConflicts(UsageRecord usageRecord, Integer excludeRecordId) {
+        if (usageRecord.getStartTime() == null || usageRecord.getEndTime() == null) {
+            return;
+        }
+        Integer roomId = usageRecord.getRoomId();
+        if (!bookingIndex.isFree(roomId, usageRecord.getStartTime(), usageRecord.getEndTime(), excludeRecordId)) {
+            throw new IllegalStateException("该时间段与已有预订冲突");
+        }
+        roomMapper.lockById(roomId);
+        if (!usageRecordMapper.findOverlapping(roomId, usageRecord.getStartTime(), usageRecord.getEndTime(), excludeRecordId).isEmpty()) {
+            throw new IllegalStateException("该时间段与已有预订冲突");
+        }
     }
 
     @Override
@@ -2,16 +2,20 @@ package com.example.springboot.service.impl;
 
 import com.example.springboot.mapper.UserMapper;
 import com.example.springboot.model.User;
+import com.example.springboot.service.PresenceService;
 import com.example.springboot.service.UserService;
 import com.example.springboot.common.Result;
+import com.example.springboot.util.AccountRevocationRegistry;
 import com.example.springboot.util.JwtUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -22,10 +26,25 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private AccountRevocationRegistry accountRevocationRegistry;
+
+    @Autowired
+    private LoginStatusWriteBehind loginStatusWriteBehind;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UsernameBloomFilter usernameBloomFilter;
+
+    @Autowired
+    private PrincipalResolver principalResolver;
+
     @Override
     public Result<User> register(String username, String password, String email, String phone) {
-        // 检查用户名是否已存在
-        User existingUser = userMapper.findByUsername(username);
+        // 检查用户名是否已存在，布隆过滤器判定一定不存在时跳过数据库查询
+        User existingUser = findExistingByUsername(username);
         if (existingUser != null) {
             return Result.error("用户名已存在");
         }
@@ -43,8 +62,15 @@ public class UserServiceImpl implements UserService {
         // 初始化余额为0
         user.setBalance(BigDecimal.ZERO);
 
-        // 保存用户
-        userMapper.insert(user);
+        // 保存用户，并发注册或本节点漏收其他节点的注册通知时由唯一约束拒绝
+        try {
+            userMapper.insert(user);
+        } catch (DuplicateKeyException e) {
+            usernameBloomFilter.add(username);
+            return Result.error("用户名已存在");
+        }
+        usernameBloomFilter.add(username);
+        principalResolver.evict(username);
 
         // 不返回密码
         user.setPassword(null);
@@ -76,7 +102,9 @@ public class UserServiceImpl implements UserService {
         // 更新用户状态和最后登录时间
         user.setStatus("登录");
         user.setLastLogin(new Date());
-        userMapper.updateStatus(user.getUserId(), user.getStatus(), user.getLastLogin());
+        // 延迟批量写入，避免登录高峰时逐条更新占用连接
+        loginStatusWriteBehind.updateUserStatus(user.getUserId(), user.getStatus(), user.getLastLogin());
+        presenceService.online(JwtUtil.REALM_USER, username);
 
         // 生成JWT令牌
         String token = jwtUtil.generateToken(username, user.getUserId().longValue());
@@ -87,23 +115,43 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User findByUsername(String username) {
-        return userMapper.findByUsername(username);
+        // 在线状态只在返回status的接口中按在线索引叠加，登录、校验等内部查询不访问Redis
+        return loginStatusWriteBehind.applyPending(userMapper.findByUsername(username));
     }
     
+    @Override
+    public User findExistingByUsername(String username) {
+        if (!usernameBloomFilter.mightExist(username)) {
+            return null;
+        }
+        User user = findByUsername(username);
+        if (user == null) {
+            usernameBloomFilter.recordFalsePositive();
+        }
+        return user;
+    }
+
     @Override
     public User findById(Integer userId) {
-        return userMapper.findById(userId);
+        return loginStatusWriteBehind.applyPending(userMapper.findById(userId));
     }
 
     @Override
     public Result<Void> updateStatus(Integer userId, String status) {
-        userMapper.updateStatus(userId, status, new Date());
+        loginStatusWriteBehind.updateUserStatus(userId, status, new Date());
         return Result.success();
     }
 
     @Override
     public List<User> findAll() {
-        return userMapper.findAll();
+        List<User> users = userMapper.findAll();
+        // 在线状态以Redis在线索引为准，数据库中的status列可能因未退出登录而长期停留在"登录"
+        Set<String> online = presenceService.onlineUsernames(JwtUtil.REALM_USER);
+        for (User user : users) {
+            loginStatusWriteBehind.applyPending(user);
+            user.setStatus(online.contains(user.getUsername()) ? "登录" : "未登录");
+        }
+        return users;
     }
 
     @Override
@@ -114,8 +162,8 @@ public class UserServiceImpl implements UserService {
             return Result.error("用户不存在");
         }
 
-        // 更新用户状态为"未登录"
-        userMapper.updateStatus(user.getUserId(), "未登录", new Date());
+        // 从在线索引中移除，不再写数据库
+        presenceService.offline(JwtUtil.REALM_USER, username);
 
         return Result.success();
     }
@@ -133,6 +181,10 @@ public class UserServiceImpl implements UserService {
         if (affectedRows == 0) {
             return Result.error("删除用户失败");
         }
+        accountRevocationRegistry.revoke(JwtUtil.REALM_USER, user.getUsername());
+        presenceService.offline(JwtUtil.REALM_USER, user.getUsername());
+        usernameBloomFilter.remove(user.getUsername());
+        principalResolver.evict(user.getUsername());
 
         return Result.success();
     }
@@ -151,6 +203,19 @@ public class UserServiceImpl implements UserService {
             return Result.error("更新用户信息失败");
         }
 
+        // 用户名或密码变更后，吊销此前签发的令牌
+        boolean usernameChanged = user.getUsername() != null && !user.getUsername().equals(existingUser.getUsername());
+        boolean passwordChanged = user.getPassword() != null && !user.getPassword().equals(existingUser.getPassword());
+        if (usernameChanged || passwordChanged) {
+            accountRevocationRegistry.revoke(JwtUtil.REALM_USER, existingUser.getUsername());
+        }
+        if (usernameChanged) {
+            usernameBloomFilter.add(user.getUsername());
+            usernameBloomFilter.remove(existingUser.getUsername());
+            principalResolver.evict(user.getUsername());
+        }
+        principalResolver.evict(existingUser.getUsername());
+
         return Result.success();
     }
     
@@ -169,6 +234,8 @@ public class UserServiceImpl implements UserService {
         if (affectedRows == 0) {
             return Result.error("密码重置失败");
         }
+        accountRevocationRegistry.revoke(JwtUtil.REALM_USER, username);
+        principalResolver.evict(username);
         
         return Result.success();
     }
@@ -0,0 +1,246 @@
+package com.example.springboot.service.impl;
+
+import com.example.springboot.mapper.UserMapper;
+import com.example.springboot.util.CountingBloomFilter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户名布隆过滤器
+ * 启动时从users表加载所有用户名，注册、删除、改名时同步更新，
+ * 并通过Redis发布订阅通知其他节点，保证在任一节点注册的用户名在所有节点都判定为可能存在。
+ * 过滤器判定不存在的用户名一定未被占用，无需查询数据库；判定可能存在时再由数据库确认。
+ * 发布订阅不保证送达，漏收通知的节点在注册时由唯一约束兜底并补入该用户名
+ */
+@Slf4j
+@Component
+public class UsernameBloomFilter implements MessageListener {
+
+    private static final String CHANNEL = "username:changed";
+
+    // 本节点标识，忽略自己发布的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${username-filter.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${username-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // 未加载完成前为null，此时所有查询都交给数据库
+    private volatile CountingBloomFilter filter;
+
+    // 重建期间新增的用户名，重建完成后补入新过滤器，避免漏判
+    private List<String> addedDuringRebuild;
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final AtomicLong definitelyAbsent = new AtomicLong();
+
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    private final AtomicLong rebuildCount = new AtomicLong();
+
+    private volatile long lastRebuildTime;
+
+    private volatile long lastRebuildMillis;
+
+    @PostConstruct
+    public void subscribe() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        rebuild();
+    }
+
+    /**
+     * 从数据库重建过滤器，容量按当前用户数的两倍与配置值中的较大者确定
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            addedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            List<String> usernames = userMapper.findAllUsernames();
+            CountingBloomFilter rebuilt = new CountingBloomFilter(
+                    Math.max(expectedInsertions, usernames.size() * 2L), falsePositiveRate);
+            usernames.forEach(username -> rebuilt.add(normalize(username)));
+            synchronized (this) {
+                addedDuringRebuild.forEach(rebuilt::add);
+                filter = rebuilt;
+            }
+            rebuildCount.incrementAndGet();
+            lastRebuildTime = System.currentTimeMillis();
+            lastRebuildMillis = lastRebuildTime - start;
+            log.info("用户名布隆过滤器重建完成，用户数: {}，槽位数: {}，哈希函数数: {}，耗时: {}ms",
+                    usernames.size(), rebuilt.getSize(), rebuilt.getHashCount(), lastRebuildMillis);
+        } catch (Exception e) {
+            log.error("用户名布隆过滤器重建失败: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                addedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * 每小时检查一次，误判率超过目标值的两倍时重建
+     */
+    @Scheduled(fixedDelay = 3600000, initialDelay = 3600000)
+    public void rebuildIfDegraded() {
+        CountingBloomFilter current = filter;
+        if (current != null && current.approximateFalsePositiveRate() > falsePositiveRate * 2) {
+            rebuild();
+        }
+    }
+
+    /**
+     * 检查用户名是否可能已被占用
+     * @param username 用户名
+     * @return false表示一定未被占用，true表示需要查询数据库确认
+     */
+    public boolean mightExist(String username) {
+        CountingBloomFilter current = filter;
+        if (current == null || username == null) {
+            return true;
+        }
+        checks.incrementAndGet();
+        if (!current.mightContain(normalize(username))) {
+            definitelyAbsent.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次误判：过滤器判定可能存在，数据库中却不存在
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    /**
+     * 用户注册成功后加入过滤器，并通知其他节点
+     * @param username 用户名
+     */
+    public void add(String username) {
+        addLocal(username);
+        publish("+", username);
+    }
+
+    /**
+     * 用户删除后移出过滤器，并通知其他节点
+     * @param username 用户名
+     */
+    public void remove(String username) {
+        removeLocal(username);
+        publish("-", username);
+    }
+
+    /**
+     * 其他节点的用户名变更通知，格式：节点标识:+或-:用户名
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 3);
+        if (parts.length < 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        if ("+".equals(parts[1])) {
+            addLocal(parts[2]);
+        } else if ("-".equals(parts[1])) {
+            removeLocal(parts[2]);
+        }
+    }
+
+    private void publish(String operation, String username) {
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId + ":" + operation + ":" + username);
+        } catch (Exception e) {
+            log.error("发布用户名变更通知失败: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void addLocal(String username) {
+        String key = normalize(username);
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.add(key);
+        }
+        CountingBloomFilter current = filter;
+        if (current != null) {
+            current.add(key);
+        }
+    }
+
+    private synchronized void removeLocal(String username) {
+        // 重建期间不做删除：新过滤器是否包含该用户名取决于查询时机，删除可能使计数错位造成漏判；
+        // 不包含该用户名时也不删除（如漏收了注册通知），否则会减掉其他用户名的计数
+        CountingBloomFilter current = filter;
+        String key = normalize(username);
+        if (current != null && addedDuringRebuild == null && current.mightContain(key)) {
+            current.remove(key);
+        }
+    }
+
+    /**
+     * 获取过滤器运行指标
+     * @return 指标
+     */
+    public Map<String, Object> metrics() {
+        CountingBloomFilter current = filter;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ready", current != null);
+        metrics.put("checks", checks.get());
+        metrics.put("definitelyAbsent", definitelyAbsent.get());
+        metrics.put("falsePositives", falsePositives.get());
+        long possiblyPresent = checks.get() - definitelyAbsent.get();
+        metrics.put("observedFalsePositiveRate", possiblyPresent > 0 ? (double) falsePositives.get() / possiblyPresent : 0.0);
+        metrics.put("rebuildCount", rebuildCount.get());
+        metrics.put("lastRebuildTime", lastRebuildTime);
+        metrics.put("lastRebuildMillis", lastRebuildMillis);
+        if (current != null) {
+            metrics.put("elementCount", current.getElementCount());
+            metrics.put("size", current.getSize());
+            metrics.put("hashCount", current.getHashCount());
+            metrics.put("estimatedFalsePositiveRate", current.approximateFalsePositiveRate());
+        }
+        return metrics;
+    }
+
+    // 数据库排序规则不区分大小写且忽略尾部空格，过滤器按同样规则归一化
+    private static String normalize(String username) {
+        return username.stripTrailing().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.springboot.task;
+
+import com.example.springboot.service.UsageRecordService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 盈利汇总回填
+ * 启动参数带 --rebuild-profit-rollup 时从使用记录重建盈利日汇总，
+ * 可用 --rebuild-profit-rollup.start-date 和 --rebuild-profit-rollup.end-date 限定日期范围（yyyy-MM-dd）
+ */
+@Slf4j
+@Component
+public class ProfitRollupBackfillRunner implements ApplicationRunner {
+
+    private static final String OPTION = "rebuild-profit-rollup";
+
+    @Autowired
+    private UsageRecordService usageRecordService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        String startDate = firstValue(args, OPTION + ".start-date");
+        String endDate = firstValue(args, OPTION + ".end-date");
+        long begin = System.currentTimeMillis();
+        int rows = usageRecordService.rebuildProfitRollup(startDate, endDate);
+        log.info("盈利日汇总重建完成，范围: {} ~ {}，汇总行数: {}，耗时: {}ms",
+                startDate, endDate, rows, System.currentTimeMillis() - begin);
+    }
+
+    private static String firstValue(ApplicationArguments args, String name) {
+        List<String> values = args.getOptionValues(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+}
@@ -1,21 +1,243 @@
 package com.example.springboot.task;
 
 import com.example.springboot.service.RoomService;
+import com.example.springboot.service.impl.BookingIndex;
+import com.example.springboot.util.LeaderLease;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 房间状态任务
+ * 每个进行中或未开始的预订在延迟队列中有一个结束条目，未开始的预订另有一个开始条目，
+ * 到点后由工作线程立即占用或释放房间并重置密码，不再定时扫描所有使用中的房间。
+ * 条目随预订索引的变更事件同步，预订被修改或删除后旧条目在到期时跳过。
+ * 另以较长间隔执行一次批量核对兜底。
+ * 多节点部署时每个节点都维护队列，但只有持有room-status租约的节点执行占用和释放
+ */
+@Slf4j
 @Component
 public class RoomStatusTask {
 
+    // 数据库异常时的重试间隔（毫秒）
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    private static final String LEASE = "room-status";
+
     @Autowired
     private RoomService roomService;
 
+    @Autowired
+    private BookingIndex bookingIndex;
+
+    @Autowired
+    private LeaderLease leaderLease;
+
+    private final DelayQueue<Entry> queue = new DelayQueue<>();
+
+    // 记录ID -> 当前有效的条目，队列中不在这里的条目已过时
+    private final Map<Integer, Entry> scheduledStarts = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Entry> scheduledEnds = new ConcurrentHashMap<>();
+
+    private Thread worker;
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::run, "room-status");
+        worker.setDaemon(true);
+        worker.start();
+        leaderLease.isLeader(LEASE);
+    }
+
+    @PreDestroy
+    public void stop() {
+        worker.interrupt();
+    }
+
+    /**
+     * 预订索引加载完成后重建队列，并释放应用停机期间已到期的房间
+     */
+    @EventListener
+    public void onBookingsReloaded(BookingIndex.BookingIndexReloadedEvent event) {
+        Set<Integer> active = new HashSet<>();
+        for (BookingIndex.Booking booking : bookingIndex.snapshots()) {
+            active.add(booking.getRecordId());
+            schedule(booking);
+        }
+        scheduledStarts.keySet().retainAll(active);
+        scheduledEnds.keySet().retainAll(active);
+        sweepExpiredRooms();
+    }
+
+    /**
+     * 成为领导者后立即核对一次，补上作为跟随者期间跳过的占用和释放：
+     * 跟随者到点时丢弃条目，易主间隙中开始的预订需在此占用房间，已到期的房间由全量核对释放
+     */
+    @EventListener
+    public void onLeadershipAcquired(LeaderLease.LeadershipAcquiredEvent event) {
+        if (!LEASE.equals(event.getName())) {
+            return;
+        }
+        long token = leaderLease.fencingToken(LEASE);
+        if (token < 0 || !leaderLease.checkFence(LEASE, token)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (BookingIndex.Booking booking : bookingIndex.snapshots()) {
+            if (booking.getStart() <= now && booking.getEnd() > now) {
+                try {
+                    // 条件更新，已是使用中的房间不受影响
+                    roomService.claimRoom(booking.getRoomId());
+                } catch (Exception e) {
+                    log.error("接管时占用房间{}失败: {}", booking.getRoomId(), e.getMessage());
+                }
+            }
+        }
+        roomService.checkAndUpdateExpiredRooms();
+    }
+
     /**
-     * 每分钟检查一次房间状态
+     * 低频全量核对，释放延迟队列遗漏的已到期房间（如直接修改数据库或节点异常）
      */
-    @Scheduled(fixedRate = 60000)
-    public void checkRoomStatus() {
+    @Scheduled(fixedDelayString = "${room-status.sweep-interval:600000}", initialDelayString = "${room-status.sweep-interval:600000}")
+    public void sweepExpiredRooms() {
+        long token = leaderLease.fencingToken(LEASE);
+        // 执行前再向Redis确认一次令牌，避免长时间停顿后的旧领导者与新领导者同时核对
+        if (token < 0 || !leaderLease.checkFence(LEASE, token)) {
+            return;
+        }
         roomService.checkAndUpdateExpiredRooms();
     }
+
+    /**
+     * 预订新增、修改或删除时更新对应的条目
+     */
+    @EventListener
+    public void onBookingChanged(BookingIndex.BookingChangedEvent event) {
+        BookingIndex.Booking booking = bookingIndex.get(event.getRecordId());
+        if (booking == null) {
+            scheduledStarts.remove(event.getRecordId());
+            scheduledEnds.remove(event.getRecordId());
+            return;
+        }
+        schedule(booking);
+    }
+
+    /**
+     * 队列中等待的有效条目数
+     */
+    public int pendingCount() {
+        return scheduledStarts.size() + scheduledEnds.size();
+    }
+
+    private void schedule(BookingIndex.Booking booking) {
+        long now = System.currentTimeMillis();
+        if (booking.getStart() > now) {
+            offer(scheduledStarts, new Entry(booking.getRecordId(), booking.getRoomId(), booking.getStart(), true));
+        } else {
+            scheduledStarts.remove(booking.getRecordId());
+        }
+        offer(scheduledEnds, new Entry(booking.getRecordId(), booking.getRoomId(), booking.getEnd(), false));
+    }
+
+    private void offer(Map<Integer, Entry> scheduled, Entry entry) {
+        Entry existing = scheduled.get(entry.recordId);
+        if (existing != null && existing.roomId == entry.roomId && existing.time == entry.time) {
+            return;
+        }
+        scheduled.put(entry.recordId, entry);
+        queue.offer(entry);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Map<Integer, Entry> scheduled = entry.start ? scheduledStarts : scheduledEnds;
+            if (scheduled.get(entry.recordId) != entry) {
+                continue;
+            }
+            if (!leaderLease.isLeader(LEASE)) {
+                // 由领导者节点处理，本节点接管时通过一次核对补上
+                scheduled.remove(entry.recordId, entry);
+                continue;
+            }
+            try {
+                if (entry.start) {
+                    claim(entry);
+                } else {
+                    release(entry.roomId, entry.recordId);
+                }
+                scheduled.remove(entry.recordId, entry);
+            } catch (Exception e) {
+                log.error("处理房间{}的预订{}失败，稍后重试: {}", entry.roomId, entry.recordId, e.getMessage());
+                Entry retry = new Entry(entry.recordId, entry.roomId, System.currentTimeMillis() + RETRY_DELAY_MILLIS, entry.start);
+                if (scheduled.replace(entry.recordId, entry, retry)) {
+                    queue.offer(retry);
+                }
+            }
+        }
+    }
+
+    private void claim(Entry entry) {
+        if (!roomService.claimRoom(entry.roomId)) {
+            log.warn("预订{}开始时房间{}不是空闲状态", entry.recordId, entry.roomId);
+        }
+    }
+
+    private void release(Integer roomId, Integer recordId) {
+        // 紧接着还有其他预订时保持占用，由下一个预订结束时释放
+        long now = System.currentTimeMillis();
+        Timestamp from = new Timestamp(now);
+        Timestamp to = new Timestamp(now + 1);
+        if (!bookingIndex.conflicts(roomId, from, to, recordId).isEmpty()) {
+            return;
+        }
+        roomService.releaseRoom(roomId);
+    }
+
+    private static final class Entry implements Delayed {
+        private final int recordId;
+        private final int roomId;
+        // 到期时间（毫秒）
+        private final long time;
+        // true为开始条目，false为结束条目
+        private final boolean start;
+
+        private Entry(int recordId, int roomId, long time, boolean start) {
+            this.recordId = recordId;
+            this.roomId = roomId;
+            this.time = time;
+            this.start = start;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(time, ((Entry) other).time);
+        }
+    }
 }
@@ -0,0 +1,88 @@
+package com.example.springboot.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 账号吊销登记
+ * 账号被删除、重置密码或修改权限后登记吊销时间，此前签发的令牌不再被信任。
+ * 查询只读本地内存，Redis中的哈希表用于在多个节点之间同步
+ */
+@Slf4j
+@Component
+public class AccountRevocationRegistry {
+
+    private static final String REDIS_KEY = "auth:revoked_accounts";
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    // 认证域:用户名 -> 吊销时间（毫秒）
+    private final Map<String, Long> revokedAt = new ConcurrentHashMap<>();
+
+    /**
+     * 吊销账号在此之前签发的所有令牌
+     * @param realm 认证域
+     * @param username 用户名
+     */
+    public void revoke(String realm, String username) {
+        if (username == null) {
+            return;
+        }
+        String key = realm + ":" + username;
+        long now = System.currentTimeMillis();
+        revokedAt.put(key, now);
+        try {
+            redisTemplate.opsForHash().put(REDIS_KEY, key, now);
+        } catch (Exception e) {
+            log.error("同步账号吊销记录到Redis失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检查令牌对应的账号是否已被吊销
+     * @param realm 认证域
+     * @param username 用户名
+     * @param issuedAt 令牌签发时间（毫秒）
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(String realm, String username, long issuedAt) {
+        if (revokedAt.isEmpty()) {
+            return false;
+        }
+        Long revoked = revokedAt.get(realm + ":" + username);
+        // iat精确到秒，同一秒内吊销后重新登录签发的令牌视为有效
+        return revoked != null && issuedAt < revoked / 1000 * 1000;
+    }
+
+    /**
+     * 每10秒从Redis拉取其他节点登记的吊销记录，并清理已超过令牌有效期的记录
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void sync() {
+        long expiredBefore = System.currentTimeMillis() - jwtUtil.getExpirationMillis();
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(REDIS_KEY);
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                long time = ((Number) entry.getValue()).longValue();
+                if (time < expiredBefore) {
+                    redisTemplate.opsForHash().delete(REDIS_KEY, entry.getKey());
+                } else {
+                    revokedAt.merge((String) entry.getKey(), time, Math::max);
+                }
+            }
+        } catch (Exception e) {
+            log.error("从Redis同步账号吊销记录失败: {}", e.getMessage());
+        }
+        revokedAt.values().removeIf(time -> time < expiredBefore);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.springboot.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计数布隆过滤器
+ * 每个槽位保存计数而不是单个比特，因此支持删除元素。
+ * mightContain返回false时元素一定不存在，返回true时元素可能存在，需要再查询数据库确认
+ */
+public class CountingBloomFilter {
+
+    private final AtomicIntegerArray counters;
+
+    private final int size;
+
+    private final int hashCount;
+
+    private final AtomicLong elementCount = new AtomicLong();
+
+    /**
+     * 按预期元素数和目标误判率计算槽位数和哈希函数个数
+     * @param expectedInsertions 预期元素数
+     * @param falsePositiveRate 目标误判率
+     */
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            expectedInsertions = 1;
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("误判率必须在0和1之间: " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.size = (int) Math.max(64, Math.min(bits, Integer.MAX_VALUE - 8));
+        this.hashCount = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        this.counters = new AtomicIntegerArray(size);
+    }
+
+    /**
+     * 添加元素
+     * @param value 元素
+     */
+    public void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            counters.incrementAndGet(index(h1, h2, i));
+        }
+        elementCount.incrementAndGet();
+    }
+
+    /**
+     * 删除元素，调用方需保证该元素之前确实添加过，否则可能产生漏判
+     * @param value 元素
+     */
+    public void remove(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            counters.updateAndGet(index(h1, h2, i), count -> count > 0 ? count - 1 : 0);
+        }
+        elementCount.updateAndGet(count -> count > 0 ? count - 1 : 0);
+    }
+
+    /**
+     * 检查元素是否可能存在
+     * @param value 元素
+     * @return false表示一定不存在，true表示可能存在
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            if (counters.get(index(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按当前非零槽位占比估算误判率
+     * @return 估算的误判率
+     */
+    public double approximateFalsePositiveRate() {
+        int occupied = 0;
+        for (int i = 0; i < size; i++) {
+            if (counters.get(i) != 0) {
+                occupied++;
+            }
+        }
+        return Math.pow((double) occupied / size, hashCount);
+    }
+
+    public long getElementCount() {
+        return elementCount.get();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    // 双重哈希：第i个哈希函数取 h1 + i * h2
+    private int index(int h1, int h2, int i) {
+        int combined = h1 + i * h2;
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+    // 64位FNV-1a，再经过MurmurHash3的fmix64打散
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53e87a9L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
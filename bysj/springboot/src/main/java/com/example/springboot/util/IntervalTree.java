@@ -0,0 +1,261 @@
+package com.example.springboot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 区间树
+ * 以AVL树按(起点, 标识)排序保存半开区间[start, end)，每个节点记录子树中最大的终点，
+ * 判断是否存在重叠区间为O(log n)，列出所有重叠区间为O(log n + k)。非线程安全，由调用方加锁
+ * @param <T> 区间附带的数据
+ */
+public class IntervalTree<T> {
+
+    private Node<T> root;
+
+    private int size;
+
+    /**
+     * 添加区间
+     * @param start 起点（包含）
+     * @param end 终点（不包含），必须大于起点
+     * @param id 区间标识，起点相同的区间按标识区分
+     * @param value 附带数据
+     * @return 是否添加成功，起点和标识都相同的区间已存在时返回false
+     */
+    public boolean add(long start, long end, long id, T value) {
+        if (end <= start) {
+            throw new IllegalArgumentException("区间终点必须大于起点");
+        }
+        int before = size;
+        root = insert(root, new Node<>(start, end, id, value));
+        return size > before;
+    }
+
+    /**
+     * 移除区间
+     * @param start 区间起点
+     * @param id 区间标识
+     * @return 是否移除成功
+     */
+    public boolean remove(long start, long id) {
+        int before = size;
+        root = delete(root, start, id);
+        return size < before;
+    }
+
+    /**
+     * 判断是否存在与[start, end)重叠的区间
+     */
+    public boolean overlapsAny(long start, long end) {
+        Node<T> node = root;
+        while (node != null) {
+            if (node.start < end && start < node.end) {
+                return true;
+            }
+            // 左子树的最大终点超过查询起点时，重叠区间若存在必定在左子树中能找到
+            if (node.left != null && node.left.maxEnd > start) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 列出与[start, end)重叠的所有区间的附带数据，按起点升序
+     */
+    public List<T> overlapping(long start, long end) {
+        List<T> result = new ArrayList<>();
+        collect(root, start, end, result);
+        return result;
+    }
+
+    /**
+     * 查找[from, to)内最早的一段长度不小于length、且不与任何区间重叠的空闲时间
+     * 按起点顺序遍历，跳过终点都不超过当前位置的子树，找到后立即停止
+     * @param from 查找范围起点
+     * @param to 查找范围终点
+     * @param length 空闲时间的最小长度，必须大于0
+     * @return 空闲时间的起点，不存在时返回-1
+     */
+    public long firstGap(long from, long to, long length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("空闲时间长度必须大于0");
+        }
+        long[] cursor = {from};
+        scanGap(root, cursor, length, to);
+        return cursor[0] + length <= to ? cursor[0] : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void collect(Node<T> node, long start, long end, List<T> result) {
+        // 子树中所有区间的终点都不超过start，不可能重叠
+        if (node == null || node.maxEnd <= start) {
+            return;
+        }
+        collect(node.left, start, end, result);
+        if (node.start < end && start < node.end) {
+            result.add(node.value);
+        }
+        // 右子树的起点都不小于当前节点，当前起点已超过查询终点时无需再看右子树
+        if (node.start < end) {
+            collect(node.right, start, end, result);
+        }
+    }
+
+    // 按起点顺序推进cursor，遇到起点距cursor不小于length的区间或cursor已超出查找范围时返回true
+    private boolean scanGap(Node<T> node, long[] cursor, long length, long to) {
+        if (node == null || node.maxEnd <= cursor[0]) {
+            return false;
+        }
+        if (scanGap(node.left, cursor, length, to)) {
+            return true;
+        }
+        if (node.start - cursor[0] >= length || cursor[0] + length > to) {
+            return true;
+        }
+        if (node.end > cursor[0]) {
+            cursor[0] = node.end;
+        }
+        return scanGap(node.right, cursor, length, to);
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) {
+            size++;
+            return added;
+        }
+        int cmp = compare(added.start, added.id, node);
+        if (cmp < 0) {
+            node.left = insert(node.left, added);
+        } else if (cmp > 0) {
+            node.right = insert(node.right, added);
+        } else {
+            return node;
+        }
+        return balance(node);
+    }
+
+    private Node<T> delete(Node<T> node, long start, long id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(start, id, node);
+        if (cmp < 0) {
+            node.left = delete(node.left, start, id);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, start, id);
+        } else {
+            size--;
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            // 用右子树的最小节点替换被删除的节点
+            Node<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private Node<T> removeMin(Node<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private static int compare(long start, long id, Node<?> node) {
+        int cmp = Long.compare(start, node.start);
+        return cmp != 0 ? cmp : Long.compare(id, node.id);
+    }
+
+    private Node<T> balance(Node<T> node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node<?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        long maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd > maxEnd) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd > maxEnd) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static int height(Node<?> node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static final class Node<T> {
+        private final long start;
+        private final long end;
+        private final long id;
+        private final T value;
+        // 子树中所有区间的最大终点
+        private long maxEnd;
+        private int height = 1;
+        private Node<T> left;
+        private Node<T> right;
+
+        private Node(long start, long end, long id, T value) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.value = value;
+            this.maxEnd = end;
+        }
+    }
+}
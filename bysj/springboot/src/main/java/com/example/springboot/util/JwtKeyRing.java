@@ -0,0 +1,310 @@
+package com.example.springboot.util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import io.jsonwebtoken.security.WeakKeyException;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JWT签名密钥环
+ * 所有SecretKey预先构建好，令牌头部的kid标识签名所用的密钥，验签时接受所有未过期的密钥。
+ * 启动时使用jwt.kid、jwt.secret作为初始密钥，jwt.retired-secrets中的密钥在启动后的一个令牌有效期内可验签。
+ * 运行时通过rotate轮换密钥：新密钥连同生效时间写入Redis并通知其他节点，各节点另有定时刷新兜底，
+ * 生效时间留出传播延迟，保证所有节点在任一节点开始用新密钥签名之前都已能验签。
+ * 新密钥生效后，被替换的密钥再保留一个令牌有效期用于验签，已签发的令牌不会失效
+ */
+@Slf4j
+@Component
+public class JwtKeyRing implements MessageListener {
+
+    // kid -> 生效时间（毫秒）:secret
+    private static final String KEYS = "jwt:keys";
+
+    private static final String CHANNEL = "jwt:keys:changed";
+
+    // 本节点标识，忽略自己发布的消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${jwt.secret:default-secret-key-must-be-at-least-32-characters-long}")
+    private String secret;
+
+    @Value("${jwt.kid:k1}")
+    private String kid;
+
+    // 已退役但仍需验签的密钥，格式：kid=secret,kid=secret
+    @Value("${jwt.retired-secrets:}")
+    private String retiredSecrets;
+
+    @Value("${jwt.expiration:86400}")
+    private Long expiration;
+
+    // 轮换后新密钥的生效延迟，需长于刷新间隔
+    @Value("${jwt.rotation.activation-delay:90000}")
+    private long activationDelay;
+
+    private final Map<String, SigningKey> keys = new ConcurrentHashMap<>();
+
+    private volatile SigningKey activeKey;
+
+    // 已知但尚未生效的最早的密钥
+    private volatile SigningKey nextKey;
+
+    // 启动时配置的密钥，生效时间为0
+    private SigningKey configuredKey;
+
+    // 引入kid之前签发的令牌没有kid头部，使用启动时配置的密钥验签
+    private String legacyKid;
+
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        legacyKid = kid;
+        configuredKey = new SigningKey(kid, secret, 0, Long.MAX_VALUE);
+        activeKey = configuredKey;
+        keys.put(kid, configuredKey);
+
+        long retiredUntil = System.currentTimeMillis() + expiration * 1000;
+        for (String entry : retiredSecrets.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String retiredKid = entry.substring(0, separator).trim();
+            keys.putIfAbsent(retiredKid, new SigningKey(retiredKid, entry.substring(separator + 1).trim(), -1, retiredUntil));
+        }
+
+        // JwtParser是线程安全的，整个应用共用一个，按kid从密钥环中取出预先构建的密钥
+        parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return resolve(header.getKeyId());
+                    }
+                })
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+        log.info("JWT密钥环初始化完成，当前密钥: {}，可验签密钥数: {}", kid, keys.size());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        refresh();
+    }
+
+    /**
+     * 获取当前用于签名的密钥，下一个密钥到达生效时间后立即切换
+     * @return 当前密钥
+     */
+    public SigningKey getActiveKey() {
+        SigningKey next = nextKey;
+        if (next != null && next.activateAt <= System.currentTimeMillis()) {
+            return next;
+        }
+        return activeKey;
+    }
+
+    /**
+     * 获取共用的令牌解析器
+     * @return 解析器
+     */
+    public JwtParser getParser() {
+        return parser;
+    }
+
+    /**
+     * 轮换签名密钥，新密钥在activation-delay后于所有节点生效
+     * @param newKid 新密钥的kid，不能与已有的kid重复
+     * @param newSecret 新密钥，为null时随机生成
+     * @return 新密钥的生效时间（毫秒）
+     */
+    public long rotate(String newKid, String newSecret) {
+        if (newKid == null || newKid.isBlank() || keys.containsKey(newKid)) {
+            throw new IllegalArgumentException("kid为空或已存在");
+        }
+        String secretToUse = newSecret != null ? newSecret : randomSecret();
+        long activateAt = System.currentTimeMillis() + activationDelay;
+        try {
+            // 先在本地构建一次，密钥强度不足时不写入Redis
+            new SigningKey(newKid, secretToUse, activateAt, Long.MAX_VALUE);
+        } catch (WeakKeyException e) {
+            throw new IllegalArgumentException("密钥长度不足256位");
+        }
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForHash().putIfAbsent(KEYS, newKid, activateAt + ":" + secretToUse))) {
+            throw new IllegalArgumentException("kid已存在");
+        }
+        refresh();
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, nodeId);
+        } catch (Exception e) {
+            log.error("发布密钥轮换通知失败，其他节点将在定时刷新时加载: {}", e.getMessage());
+        }
+        log.info("JWT签名密钥轮换为{}，生效时间: {}", newKid, activateAt);
+        return activateAt;
+    }
+
+    /**
+     * 接收其他节点的密钥轮换通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!nodeId.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+            refresh();
+        }
+    }
+
+    /**
+     * 从Redis刷新密钥，按生效时间排列，每个密钥在下一个密钥生效后再保留一个令牌有效期用于验签。
+     * 已过期的密钥从本地和Redis中移除
+     */
+    @Scheduled(fixedDelayString = "${jwt.rotation.refresh-interval:30000}", initialDelayString = "${jwt.rotation.refresh-interval:30000}")
+    public synchronized void refresh() {
+        Map<Object, Object> shared;
+        try {
+            shared = stringRedisTemplate.opsForHash().entries(KEYS);
+        } catch (Exception e) {
+            log.error("刷新JWT密钥失败: {}", e.getMessage());
+            return;
+        }
+        List<SigningKey> chain = new ArrayList<>();
+        chain.add(configuredKey);
+        for (Map.Entry<Object, Object> entry : shared.entrySet()) {
+            String sharedKid = entry.getKey().toString();
+            String value = entry.getValue().toString();
+            int separator = value.indexOf(':');
+            if (sharedKid.equals(kid) || separator <= 0) {
+                continue;
+            }
+            try {
+                long activateAt = Long.parseLong(value.substring(0, separator));
+                SigningKey known = keys.get(sharedKid);
+                // kid不会重复使用，已构建过的密钥直接复用，不再重新派生
+                chain.add(known != null && known.activateAt == activateAt
+                        ? known
+                        : new SigningKey(sharedKid, value.substring(separator + 1), activateAt, Long.MAX_VALUE));
+            } catch (RuntimeException e) {
+                log.error("无效的JWT密钥{}: {}", sharedKid, e.getMessage());
+            }
+        }
+        chain.sort(Comparator.comparingLong((SigningKey key) -> key.activateAt));
+
+        long now = System.currentTimeMillis();
+        SigningKey active = configuredKey;
+        SigningKey next = null;
+        Set<String> expired = new HashSet<>();
+        for (int i = 0; i < chain.size(); i++) {
+            SigningKey key = chain.get(i);
+            long verifyUntil = i + 1 < chain.size() ? chain.get(i + 1).activateAt + expiration * 1000 : Long.MAX_VALUE;
+            if (verifyUntil < now) {
+                expired.add(key.kid);
+                continue;
+            }
+            if (key.verifyUntil != verifyUntil) {
+                key = key.withVerifyUntil(verifyUntil);
+            }
+            keys.put(key.kid, key);
+            if (key.activateAt <= now) {
+                active = key;
+            } else if (next == null) {
+                next = key;
+            }
+        }
+        activeKey = active;
+        nextKey = next;
+        keys.values().removeIf(key -> key.verifyUntil < now || expired.contains(key.kid));
+        expired.remove(kid);
+        if (!expired.isEmpty()) {
+            try {
+                stringRedisTemplate.opsForHash().delete(KEYS, expired.toArray());
+            } catch (Exception e) {
+                log.error("移除过期JWT密钥失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private SecretKey resolve(String keyId) {
+        SigningKey key = keys.get(keyId != null ? keyId : legacyKid);
+        if (key == null || key.verifyUntil < System.currentTimeMillis()) {
+            throw new SignatureException("未知或已过期的签名密钥: " + keyId);
+        }
+        return key.secretKey;
+    }
+
+    private static String randomSecret() {
+        byte[] bytes = new byte[48];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 签名密钥
+     */
+    public static final class SigningKey {
+        private final String kid;
+        private final SecretKey secretKey;
+        // 开始用于签名的时间（毫秒），启动时配置的密钥为0，配置的退役密钥为-1
+        private final long activateAt;
+        // 验签截止时间（毫秒），没有后续密钥时为Long.MAX_VALUE
+        private final long verifyUntil;
+
+        private SigningKey(String kid, String secret, long activateAt, long verifyUntil) {
+            this(kid, Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8)), activateAt, verifyUntil);
+        }
+
+        private SigningKey(String kid, SecretKey secretKey, long activateAt, long verifyUntil) {
+            this.kid = kid;
+            this.secretKey = secretKey;
+            this.activateAt = activateAt;
+            this.verifyUntil = verifyUntil;
+        }
+
+        private SigningKey withVerifyUntil(long verifyUntil) {
+            return new SigningKey(kid, secretKey, activateAt, verifyUntil);
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public SecretKey getSecretKey() {
+            return secretKey;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.springboot.util;
+
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已验证JWT令牌缓存
+ * 以令牌的SHA-256摘要为键，缓存验签后的声明，同一令牌在有效期内只需做一次HMAC验签
+ * 采用LRU淘汰，并在令牌过期时移除对应条目
+ */
+@Component
+public class JwtTokenCache {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    });
+
+    private final int maxSize;
+
+    private final LinkedHashMap<String, CachedToken> cache;
+
+    public JwtTokenCache(@Value("${jwt.cache.max-size:10000}") int maxSize) {
+        this.maxSize = maxSize;
+        // accessOrder=true，按访问顺序维护链表，实现LRU
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedToken> eldest) {
+                return size() > JwtTokenCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的声明
+     * @param token 令牌
+     * @return 未过期的声明，不存在或已过期返回null
+     */
+    public Claims get(String token) {
+        String key = hash(token);
+        synchronized (cache) {
+            CachedToken cached = cache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expiresAt <= System.currentTimeMillis()) {
+                cache.remove(key);
+                return null;
+            }
+            return cached.claims;
+        }
+    }
+
+    /**
+     * 缓存验签通过的声明
+     * @param token 令牌
+     * @param claims 声明
+     */
+    public void put(String token, Claims claims) {
+        if (claims.getExpiration() == null) {
+            return;
+        }
+        CachedToken cached = new CachedToken(claims, claims.getExpiration().getTime());
+        String key = hash(token);
+        synchronized (cache) {
+            cache.put(key, cached);
+        }
+    }
+
+    /**
+     * 移除指定令牌的缓存
+     * @param token 令牌
+     */
+    public void invalidate(String token) {
+        String key = hash(token);
+        synchronized (cache) {
+            cache.remove(key);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 每分钟清理一次已过期的令牌
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Iterator<CachedToken> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiresAt <= now) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private String hash(String token) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        byte[] bytes = digest.digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static final class CachedToken {
+        private final Claims claims;
+        private final long expiresAt;
+
+        private CachedToken(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,47 +1,51 @@
 package com.example.springboot.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.crypto.SecretKey;
-import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 
 @Component
 public class JwtUtil {
 
+    // 令牌中记录账号所属认证域和权限的声明名称
+    public static final String CLAIM_REALM = "realm";
+    public static final String CLAIM_AUTHORITIES = "authorities";
+
+    public static final String REALM_USER = "user";
+    public static final String REALM_ADMIN = "admin";
+
     @Value("${jwt.secret:default-secret-key-must-be-at-least-32-characters-long}")
     private String secret;
 
     @Value("${jwt.expiration:86400}")
     private Long expiration;
 
+    @Autowired
+    private JwtTokenCache tokenCache;
+
+    // 签名密钥和解析器由密钥环统一维护，签名和验签时不再重新构建密钥
+    @Autowired
+    private JwtKeyRing keyRing;
+
     @PostConstruct
     public void init() {
         System.out.println("JWT Secret: " + secret);
         System.out.println("JWT Expiration: " + expiration);
     }
 
-
-    
-    /**
-     * 获取签名密钥
-     * @return 签名密钥
-     */
-    private SecretKey getSigningKey() {
-        byte[] keyBytes = secret.getBytes(StandardCharsets.UTF_8);
-        return Keys.hmacShaKeyFor(keyBytes);
-    }
-
     /**
      * 从令牌中提取用户名
      * @param token 令牌
@@ -82,15 +86,26 @@ public class JwtUtil {
 
     /**
      * 从令牌中提取所有声明
+     * 验签结果会被缓存，同一令牌在有效期内只解析一次
      * @param token 令牌
      * @return 所有声明
      */
     private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = tokenCache.get(token);
+        if (claims == null) {
+            claims = keyRing.getParser().parseClaimsJws(token).getBody();
+            tokenCache.put(token, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * 验签并解析令牌，签名无效或已过期时抛出异常
+     * @param token 令牌
+     * @return 所有声明
+     */
+    public Claims parseToken(String token) {
+        return extractAllClaims(token);
     }
 
     /**
@@ -111,6 +126,9 @@ public class JwtUtil {
     public String generateToken(String username, Long userId) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", userId);
+        // 普通用户没有额外角色
+        claims.put(CLAIM_REALM, REALM_USER);
+        claims.put(CLAIM_AUTHORITIES, List.of());
         return createToken(claims, username);
     }
 
@@ -121,12 +139,15 @@ public class JwtUtil {
      * @return 令牌
      */
     private String createToken(Map<String, Object> claims, String subject) {
+        JwtKeyRing.SigningKey signingKey = keyRing.getActiveKey();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKid())
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(subject)
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration * 1000))
-                .signWith(getSigningKey())
+                .signWith(signingKey.getSecretKey())
                 .compact();
     }
 
@@ -137,17 +158,58 @@ public class JwtUtil {
      * @return 是否有效
      */
     public Boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username) && !isTokenExpired(token));
+        return validateToken(extractAllClaims(token), username);
     }
+
+    /**
+     * 使用已解析的声明验证令牌
+     * @param claims 声明
+     * @param username 用户名
+     * @return 是否有效
+     */
+    public Boolean validateToken(Claims claims, String username) {
+        return claims.getSubject().equals(username) && !claims.getExpiration().before(new Date());
+    }
+
+    /**
+     * 从声明中提取认证域
+     * @param claims 声明
+     * @return 认证域，旧令牌没有该声明时返回null
+     */
+    public String extractRealm(Claims claims) {
+        return claims.get(CLAIM_REALM, String.class);
+    }
+
+    /**
+     * 从声明中提取权限列表
+     * @param claims 声明
+     * @return 权限列表
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> extractAuthorities(Claims claims) {
+        List<String> authorities = claims.get(CLAIM_AUTHORITIES, List.class);
+        return authorities != null ? authorities : List.of();
+    }
+
+    /**
+     * 获取令牌有效期
+     * @return 有效期（毫秒）
+     */
+    public long getExpirationMillis() {
+        return expiration * 1000;
+    }
+
     public String generateToken(String username, Long userId, Map<String, Object> claims) {
+        JwtKeyRing.SigningKey signingKey = keyRing.getActiveKey();
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKid())
                 .setClaims(claims)
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
                 .claim("userId", userId)
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expiration * 1000))
-                .signWith(getSigningKey())
+                .signWith(signingKey.getSecretKey())
                 .compact();
     }
 }
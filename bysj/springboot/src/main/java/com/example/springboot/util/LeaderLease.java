@@ -0,0 +1,267 @@
+package com.example.springboot.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Redis租约的领导者选举
+ * 集群中每个定时任务同一时刻只由持有对应租约的节点执行。租约通过SET PX抢占并定期续期，
+ * 每次易主都发放一个递增的防护令牌；节点在本地按租约时长计算到期时间，
+ * 续期失败或Redis不可用时到期即自动放弃，其他节点在一个租约周期内接管。
+ * 续期在专用线程上执行，不与@Scheduled任务共用调度线程，耗时较长的定时任务不会导致租约过期；
+ * 成为领导者的事件在另一个线程上发布，监听器中的核对同样不会阻塞续期
+ */
+@Slf4j
+@Component
+public class LeaderLease {
+
+    private static final String KEY_PREFIX = "leader:";
+
+    // 本地到期时间比租约提前的安全余量，避免时钟误差导致两个节点同时认为自己是领导者
+    private static final long SAFETY_MARGIN_MILLIS = 1000;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${leader-lease.ttl:15000}")
+    private long ttl;
+
+    @Value("${leader-lease.renew-interval:5000}")
+    private long renewInterval;
+
+    // 续期线程
+    private final ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor(daemon("leader-lease"));
+
+    // 发布领导者事件的线程，监听器按事件顺序执行
+    private final ExecutorService eventExecutor = Executors.newSingleThreadExecutor(daemon("leader-lease-event"));
+
+    // 节点标识，进程名（pid@主机名）加随机后缀
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    private final DefaultRedisScript<Long> acquireScript;
+
+    private final DefaultRedisScript<Long> releaseScript;
+
+    // 租约名称 -> 本节点的持有状态
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    public LeaderLease() {
+        acquireScript = new DefaultRedisScript<>();
+        acquireScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/leader_lease_acquire.lua")));
+        acquireScript.setResultType(Long.class);
+        releaseScript = new DefaultRedisScript<>();
+        releaseScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/leader_lease_release.lua")));
+        releaseScript.setResultType(Long.class);
+    }
+
+    /**
+     * 判断本节点是否持有租约，首次调用时登记该租约并立即尝试获取，之后由定时任务续期
+     * @param name 租约名称，通常为任务名
+     * @return 是否为领导者
+     */
+    public boolean isLeader(String name) {
+        Lease lease = leases.get(name);
+        if (lease == null) {
+            Lease created = new Lease();
+            lease = leases.putIfAbsent(name, created);
+            if (lease == null) {
+                lease = created;
+                renew(name, created);
+            }
+        }
+        return lease.token > 0 && System.currentTimeMillis() < lease.validUntil;
+    }
+
+    /**
+     * 获取本节点持有租约时的防护令牌
+     * @param name 租约名称
+     * @return 防护令牌，未持有时返回-1
+     */
+    public long fencingToken(String name) {
+        return isLeader(name) ? leases.get(name).token : -1;
+    }
+
+    /**
+     * 在写入前确认租约仍由本节点以同一防护令牌持有，避免暂停过久的旧领导者继续写入
+     * @param name 租约名称
+     * @param token 开始执行时取得的防护令牌
+     * @return 令牌是否仍然有效
+     */
+    public boolean checkFence(String name, long token) {
+        if (token <= 0) {
+            return false;
+        }
+        try {
+            return (nodeId + "|" + token).equals(stringRedisTemplate.opsForValue().get(KEY_PREFIX + name));
+        } catch (Exception e) {
+            log.error("校验领导者租约失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        renewExecutor.scheduleWithFixedDelay(this::renewAll, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 续期所有已登记的租约，间隔需明显短于租约时长
+     */
+    public void renewAll() {
+        try {
+            leases.forEach(this::renew);
+        } catch (Exception e) {
+            // 异常会终止scheduleWithFixedDelay的后续执行
+            log.error("续期领导者租约失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 获取租约状态
+     * @return 各租约的持有节点、本节点是否为领导者及防护令牌
+     */
+    public Map<String, Object> metrics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodeId", nodeId);
+        Map<String, Object> details = new LinkedHashMap<>();
+        leases.forEach((name, lease) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            String holder = null;
+            try {
+                holder = stringRedisTemplate.opsForValue().get(KEY_PREFIX + name);
+            } catch (Exception e) {
+                log.error("读取领导者租约失败: {}", e.getMessage());
+            }
+            item.put("holder", holder);
+            item.put("leader", isLeader(name));
+            item.put("fencingToken", lease.token);
+            item.put("acquisitions", lease.acquisitions);
+            details.put(name, item);
+        });
+        result.put("leases", details);
+        return result;
+    }
+
+    /**
+     * 应用关闭时主动释放持有的租约，其他节点无需等待租约到期即可接管
+     */
+    @PreDestroy
+    public void releaseAll() {
+        renewExecutor.shutdownNow();
+        eventExecutor.shutdownNow();
+        leases.forEach((name, lease) -> {
+            if (lease.token > 0) {
+                try {
+                    stringRedisTemplate.execute(releaseScript, Arrays.asList(KEY_PREFIX + name), nodeId + "|" + lease.token);
+                } catch (Exception e) {
+                    log.error("释放领导者租约失败: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void renew(String name, Lease lease) {
+        long startedAt = System.currentTimeMillis();
+        Long token;
+        try {
+            token = stringRedisTemplate.execute(acquireScript,
+                    Arrays.asList(KEY_PREFIX + name, KEY_PREFIX + name + ":fence"), nodeId, String.valueOf(ttl));
+        } catch (Exception e) {
+            // Redis不可用时不续期，本地租约到期后自动放弃
+            log.error("续期领导者租约{}失败: {}", name, e.getMessage());
+            return;
+        }
+        boolean acquired;
+        synchronized (lease) {
+            if (token == null || token <= 0) {
+                if (lease.token > 0) {
+                    log.warn("领导者租约{}已被其他节点持有", name);
+                }
+                lease.token = -1;
+                return;
+            }
+            acquired = lease.token != token;
+            lease.token = token;
+            // 以发起请求的时间计算到期时间，偏保守
+            lease.validUntil = startedAt + ttl - SAFETY_MARGIN_MILLIS;
+            if (acquired) {
+                lease.acquisitions++;
+            }
+        }
+        if (acquired) {
+            log.info("本节点{}成为{}的领导者，防护令牌: {}", nodeId, name, token);
+            LeadershipAcquiredEvent event = new LeadershipAcquiredEvent(name, token);
+            try {
+                eventExecutor.execute(() -> {
+                    try {
+                        eventPublisher.publishEvent(event);
+                    } catch (Exception e) {
+                        log.error("处理领导者事件{}失败: {}", name, e.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // 应用正在关闭
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Lease {
+        private volatile long token = -1;
+        private volatile long validUntil;
+        private volatile int acquisitions;
+    }
+
+    /**
+     * 本节点成为某个租约的领导者事件
+     */
+    public static final class LeadershipAcquiredEvent {
+        private final String name;
+        private final long token;
+
+        private LeadershipAcquiredEvent(String name, long token) {
+            this.name = name;
+            this.token = token;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getToken() {
+            return token;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.springboot.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的继续令牌
+ * 令牌内容为查询范围和上一页最后一条记录的ID，经Base64编码后对客户端不透明。
+ * 查询范围不一致的令牌视为无效，防止把一个列表的游标用于另一个列表
+ */
+public final class PageCursor {
+
+    private static final String VERSION = "v1";
+
+    private PageCursor() {
+    }
+
+    /**
+     * 生成继续令牌
+     * @param scope 查询范围，如 "available:3"
+     * @param lastId 本页最后一条记录的ID
+     * @return 令牌
+     */
+    public static String encode(String scope, int lastId) {
+        String raw = VERSION + "|" + scope + "|" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析继续令牌
+     * @param scope 当前查询范围
+     * @param cursor 令牌，为空表示第一页
+     * @return 上一页最后一条记录的ID，第一页返回0
+     * @throws IllegalArgumentException 令牌格式错误或查询范围不一致
+     */
+    public static int decode(String scope, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        int last = raw.lastIndexOf('|');
+        if (last < 0 || !raw.substring(0, last).equals(VERSION + "|" + scope)) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+        try {
+            return Integer.parseInt(raw.substring(last + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.springboot.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按日期列存的营收和使用次数
+ * 每列是一个维度（全部门店、单个门店、门店下的单个房间）逐日的前缀和数组，
+ * 第i个元素为起始日期之后前i天的合计，任意日期范围的合计为两次数组读取相减。
+ * 金额以分为单位保存，累加和扣除没有浮点误差。非线程安全，由调用方加锁
+ */
+public class RevenueColumns {
+
+    // 合计列的下标
+    public static final int TOTAL = 0;
+
+    // 门店列和合计列的房间ID，合计列的门店ID
+    private static final int NONE = -1;
+
+    // 第一天的纪元日（1970-01-01为0）
+    private long baseDay;
+
+    // 覆盖的天数，前缀和数组的有效长度为days + 1
+    private int days;
+
+    // 数组可容纳的天数
+    private int capacity;
+
+    private int columnCount;
+
+    private long[][] revenue = new long[8][];
+
+    private int[][] sessions = new int[8][];
+
+    private int[] columnStore = new int[8];
+
+    private int[] columnRoom = new int[8];
+
+    // (门店ID, 房间ID) -> 列下标
+    private final Map<Long, Integer> roomColumns = new HashMap<>();
+
+    // 门店ID -> 列下标
+    private final Map<Integer, Integer> storeColumns = new HashMap<>();
+
+    // 批量加载阶段数组中保存的是每天的增量，accumulate后转为前缀和
+    private boolean loading;
+
+    /**
+     * @param baseDay 第一天的纪元日
+     * @param loading 为true时先以增量方式批量写入，写完后调用accumulate
+     */
+    public RevenueColumns(long baseDay, boolean loading) {
+        this.baseDay = baseDay;
+        this.capacity = 16;
+        this.loading = loading;
+        newColumn(NONE, NONE);
+    }
+
+    /**
+     * 计入一天的营收，金额和次数为负数时扣除。
+     * 加载阶段为O(1)，之后为O(覆盖天数 - day)，新记录通常落在最近几天
+     * @param day 纪元日
+     * @param storeId 门店ID
+     * @param roomId 房间ID
+     * @param cents 金额（分）
+     * @param count 使用次数
+     */
+    public void add(long day, int storeId, int roomId, long cents, int count) {
+        int index = indexOf(day);
+        int[] targets = {TOTAL, storeColumn(storeId), roomColumn(storeId, roomId)};
+        for (int column : targets) {
+            long[] columnRevenue = revenue[column];
+            int[] columnSessions = sessions[column];
+            if (loading) {
+                columnRevenue[index + 1] += cents;
+                columnSessions[index + 1] += count;
+            } else {
+                for (int i = index + 1; i <= days; i++) {
+                    columnRevenue[i] += cents;
+                    columnSessions[i] += count;
+                }
+            }
+        }
+    }
+
+    /**
+     * 把批量加载的每日增量转为前缀和，之后的写入直接维护前缀和
+     */
+    public void accumulate() {
+        if (!loading) {
+            return;
+        }
+        for (int column = 0; column < columnCount; column++) {
+            long[] columnRevenue = revenue[column];
+            int[] columnSessions = sessions[column];
+            for (int i = 1; i <= days; i++) {
+                columnRevenue[i] += columnRevenue[i - 1];
+                columnSessions[i] += columnSessions[i - 1];
+            }
+        }
+        loading = false;
+    }
+
+    /**
+     * 扩展覆盖范围到指定日期，之后的查询和写入不再需要扩容
+     */
+    public void cover(long fromDay, long toDay) {
+        indexOf(fromDay);
+        indexOf(toDay);
+    }
+
+    /**
+     * 列在日期范围内的营收合计（分）
+     * @param column 列下标
+     * @param fromDay 开始纪元日（包含）
+     * @param toDay 结束纪元日（包含）
+     */
+    public long revenue(int column, long fromDay, long toDay) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        long[] values = revenue[column];
+        return values[position(toDay + 1)] - values[position(fromDay)];
+    }
+
+    /**
+     * 列在日期范围内的使用次数合计
+     */
+    public long sessions(int column, long fromDay, long toDay) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        int[] values = sessions[column];
+        return (long) values[position(toDay + 1)] - values[position(fromDay)];
+    }
+
+    /**
+     * 门店列的下标，没有数据时返回-1
+     */
+    public int findStoreColumn(int storeId) {
+        return storeColumns.getOrDefault(storeId, NONE);
+    }
+
+    /**
+     * 门店下房间列的下标，没有数据时返回-1
+     */
+    public int findRoomColumn(int storeId, int roomId) {
+        return roomColumns.getOrDefault(key(storeId, roomId), NONE);
+    }
+
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * 列所属的门店ID，合计列为-1
+     */
+    public int storeOf(int column) {
+        return columnStore[column];
+    }
+
+    /**
+     * 列对应的房间ID，门店列和合计列为-1
+     */
+    public int roomOf(int column) {
+        return columnRoom[column];
+    }
+
+    public boolean isStoreColumn(int column) {
+        return column != TOTAL && columnRoom[column] == NONE;
+    }
+
+    public boolean isRoomColumn(int column) {
+        return columnRoom[column] != NONE;
+    }
+
+    public long firstDay() {
+        return baseDay;
+    }
+
+    /**
+     * 覆盖的最后一天，尚无数据时为第一天的前一天
+     */
+    public long lastDay() {
+        return baseDay + days - 1;
+    }
+
+    private int storeColumn(int storeId) {
+        Integer column = storeColumns.get(storeId);
+        if (column == null) {
+            column = newColumn(storeId, NONE);
+            storeColumns.put(storeId, column);
+        }
+        return column;
+    }
+
+    private int roomColumn(int storeId, int roomId) {
+        long key = key(storeId, roomId);
+        Integer column = roomColumns.get(key);
+        if (column == null) {
+            column = newColumn(storeId, roomId);
+            roomColumns.put(key, column);
+        }
+        return column;
+    }
+
+    private int newColumn(int storeId, int roomId) {
+        if (columnCount == revenue.length) {
+            int length = columnCount * 2;
+            revenue = Arrays.copyOf(revenue, length);
+            sessions = Arrays.copyOf(sessions, length);
+            columnStore = Arrays.copyOf(columnStore, length);
+            columnRoom = Arrays.copyOf(columnRoom, length);
+        }
+        int column = columnCount++;
+        // 新列之前没有数据，前缀和全部为0
+        revenue[column] = new long[capacity + 1];
+        sessions[column] = new int[capacity + 1];
+        columnStore[column] = storeId;
+        columnRoom[column] = roomId;
+        return column;
+    }
+
+    // 扩展覆盖范围使其包含day，返回day的下标
+    private int indexOf(long day) {
+        if (day < baseDay) {
+            prepend((int) (baseDay - day));
+        } else if (day - baseDay >= days) {
+            extend((int) (day - baseDay + 1));
+        }
+        return (int) (day - baseDay);
+    }
+
+    // 向后扩展，前缀和模式下新的天数沿用最后的合计，加载模式下增量为0
+    private void extend(int newDays) {
+        if (newDays > capacity) {
+            resize(Math.max(newDays, capacity * 2), 0);
+        }
+        if (!loading) {
+            for (int column = 0; column < columnCount; column++) {
+                Arrays.fill(revenue[column], days + 1, newDays + 1, revenue[column][days]);
+                Arrays.fill(sessions[column], days + 1, newDays + 1, sessions[column][days]);
+            }
+        }
+        days = newDays;
+    }
+
+    // 向前扩展shift天，这些天没有数据，原有的值整体后移
+    private void prepend(int shift) {
+        resize(Math.max(days + shift, capacity), shift);
+        baseDay -= shift;
+        days += shift;
+    }
+
+    private void resize(int newCapacity, int shift) {
+        for (int column = 0; column < columnCount; column++) {
+            long[] newRevenue = new long[newCapacity + 1];
+            int[] newSessions = new int[newCapacity + 1];
+            System.arraycopy(revenue[column], 0, newRevenue, shift, days + 1);
+            System.arraycopy(sessions[column], 0, newSessions, shift, days + 1);
+            revenue[column] = newRevenue;
+            sessions[column] = newSessions;
+        }
+        capacity = newCapacity;
+    }
+
+    // 前缀和数组中纪元日day之前的合计所在的位置，超出覆盖范围时取边界
+    private int position(long day) {
+        long index = day - baseDay;
+        if (index <= 0) {
+            return 0;
+        }
+        return (int) Math.min(index, days);
+    }
+
+    private static long key(int storeId, int roomId) {
+        return ((long) storeId << 32) | (roomId & 0xffffffffL);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.springboot.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 按标签失效的Redis缓存
+ * 写入缓存时把键登记到每个标签对应的集合中（如store:1、user:2、report:daily），
+ * 数据变更时按标签失效，由Lua脚本在一次调用中删除集合中的所有键，不需要KEYS或SCAN遍历键空间。
+ * 标签集合的过期时间随每次写入延长，已过期的缓存键在下次失效时顺带移除
+ */
+@Slf4j
+@Component
+public class TaggedCache {
+
+    private static final String TAG_PREFIX = "cache:tag:";
+
+    // 标签集合的过期时间，需长于所有缓存项的过期时间
+    private static final long TAG_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final DefaultRedisScript<Long> invalidateScript;
+
+    public TaggedCache() {
+        invalidateScript = new DefaultRedisScript<>();
+        invalidateScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/tagged_cache_invalidate.lua")));
+        invalidateScript.setResultType(Long.class);
+    }
+
+    /**
+     * 读取缓存
+     * @param key 缓存键
+     * @return 缓存值，不存在或Redis不可用时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key) {
+        try {
+            return (T) redisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            log.error("读取缓存{}失败: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存并登记到标签，写入和登记在同一个管道中完成
+     * @param key 缓存键
+     * @param value 缓存值
+     * @param ttl 过期时间
+     * @param unit 时间单位
+     * @param tags 标签
+     */
+    @SuppressWarnings("unchecked")
+    public void put(String key, Object value, long ttl, TimeUnit unit, String... tags) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(value);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().set(rawKey, rawValue, Expiration.from(ttl, unit), RedisStringCommands.SetOption.upsert());
+                for (String tag : tags) {
+                    if (tag == null) {
+                        continue;
+                    }
+                    byte[] rawTag = (TAG_PREFIX + tag).getBytes(StandardCharsets.UTF_8);
+                    connection.setCommands().sAdd(rawTag, rawKey);
+                    connection.keyCommands().expire(rawTag, TAG_TTL_SECONDS);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("写入缓存{}失败: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取缓存，不存在时加载并写入
+     * @param key 缓存键
+     * @param ttl 过期时间
+     * @param unit 时间单位
+     * @param loader 加载数据，返回null时不缓存
+     * @param tags 标签
+     * @return 缓存值或加载的值
+     */
+    public <T> T getOrLoad(String key, long ttl, TimeUnit unit, Supplier<T> loader, String... tags) {
+        T value = get(key);
+        if (value == null) {
+            value = loader.get();
+            if (value != null) {
+                put(key, value, ttl, unit, tags);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 失效标签下的所有缓存
+     * @param tags 标签，null会被忽略
+     */
+    public void invalidate(String... tags) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String tag : tags) {
+            if (tag != null) {
+                keys.add(TAG_PREFIX + tag);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(invalidateScript, new ArrayList<>(keys));
+        } catch (Exception e) {
+            log.error("按标签{}失效缓存失败: {}", keys, e.getMessage());
+        }
+    }
+
+    /**
+     * 直接删除缓存键
+     * @param keys 缓存键
+     */
+    public void evict(String... keys) {
+        List<String> list = Arrays.asList(keys);
+        try {
+            redisTemplate.delete(list);
+        } catch (Exception e) {
+            log.error("删除缓存{}失败: {}", list, e.getMessage());
+        }
+    }
+
+    /**
+     * 门店标签
+     */
+    public static String store(Object storeId) {
+        return storeId != null ? "store:" + storeId : null;
+    }
+
+    /**
+     * 用户标签
+     */
+    public static String user(Object userId) {
+        return userId != null ? "user:" + userId : null;
+    }
+
+    /**
+     * 房间标签
+     */
+    public static String room(Object roomId) {
+        return roomId != null ? "room:" + roomId : null;
+    }
+
+    /**
+     * 管理员标签
+     */
+    public static String admin(Object adminId) {
+        return adminId != null ? "admin:" + adminId : null;
+    }
+
+    /**
+     * 报表类型标签
+     */
+    public static String report(String type) {
+        return "report:" + type;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.springboot.util;
+
+import com.example.springboot.config.RateLimitProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 令牌桶限流器
+ * 令牌桶保存在Redis中，每次检查执行一次Lua脚本，多个节点共享同一个桶。
+ * Redis不可用时在一段时间内改用本节点内存中的令牌桶，保证限流不失效
+ */
+@Slf4j
+@Component
+public class TokenBucketRateLimiter {
+
+    private static final String KEY_PREFIX = "rate_limit:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    private final DefaultRedisScript<List> script;
+
+    // 本地令牌桶，仅在Redis不可用时使用
+    private final Map<String, LocalBucket> localBuckets = new ConcurrentHashMap<>();
+
+    // 在此时间之前直接使用本地令牌桶
+    private volatile long redisRetryAt;
+
+    public TokenBucketRateLimiter() {
+        script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/token_bucket.lua")));
+        script.setResultType(List.class);
+    }
+
+    /**
+     * 尝试获取一个令牌
+     * @param rule 限流规则
+     * @param key 计数维度的值，如IP或用户名
+     * @return 获取成功返回0，否则返回建议的重试等待毫秒数
+     */
+    public long tryAcquire(RateLimitProperties.Rule rule, String key) {
+        String bucketKey = KEY_PREFIX + rule.getName() + ":" + key;
+        double ratePerMilli = rule.getRefillPerSecond() / 1000.0;
+        if (System.currentTimeMillis() >= redisRetryAt) {
+            try {
+                List<?> result = stringRedisTemplate.execute(script, Collections.singletonList(bucketKey),
+                        String.valueOf(rule.getCapacity()), String.valueOf(ratePerMilli), "1");
+                if (result != null && result.size() == 3) {
+                    return ((Number) result.get(0)).longValue() == 1 ? 0 : Math.max(1, ((Number) result.get(2)).longValue());
+                }
+            } catch (Exception e) {
+                redisRetryAt = System.currentTimeMillis() + properties.getFallbackMillis();
+                log.error("Redis限流不可用，{}ms内改用本地限流: {}", properties.getFallbackMillis(), e.getMessage());
+            }
+        }
+        return localBuckets.computeIfAbsent(bucketKey, k -> new LocalBucket(rule.getCapacity(), ratePerMilli))
+                .tryAcquire();
+    }
+
+    /**
+     * 每分钟清理已补满的本地令牌桶，补满的桶与不存在的桶等价
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        long now = System.currentTimeMillis();
+        localBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static final class LocalBucket {
+        private final int capacity;
+        private final double ratePerMilli;
+        private double tokens;
+        private long lastRefill;
+
+        private LocalBucket(int capacity, double ratePerMilli) {
+            this.capacity = capacity;
+            this.ratePerMilli = ratePerMilli;
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        private synchronized long tryAcquire() {
+            long now = System.currentTimeMillis();
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / ratePerMilli));
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + Math.max(0, now - lastRefill) * ratePerMilli);
+            lastRefill = now;
+        }
+    }
+}
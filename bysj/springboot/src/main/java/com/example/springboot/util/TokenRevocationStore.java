@@ -0,0 +1,170 @@
+package com.example.springboot.util;
+
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌吊销存储
+ * 退出登录的令牌以jti为键写入Redis，过期时间等于令牌剩余有效期。
+ * 每个节点在本地布隆过滤器中保存所有已吊销的jti，通过Redis发布订阅接收其他节点的吊销通知，
+ * 请求校验时只有布隆过滤器命中才查询Redis确认，绝大多数请求不需要访问Redis
+ */
+@Slf4j
+@Component
+public class TokenRevocationStore implements MessageListener {
+
+    private static final String KEY_PREFIX = "auth:revoked:jti:";
+
+    private static final String CHANNEL = "auth:revoked";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${jwt.revocation.expected-insertions:100000}")
+    private long expectedInsertions;
+
+    @Value("${jwt.revocation.false-positive-rate:0.001}")
+    private double falsePositiveRate;
+
+    private volatile CountingBloomFilter filter;
+
+    // 重建期间收到的吊销通知，重建完成后补入新过滤器
+    private List<String> addedDuringRebuild;
+
+    // 已在Redis确认过的jti -> 令牌过期时间（毫秒），避免同一令牌反复查询Redis
+    private final Map<String, Long> confirmed = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        filter = new CountingBloomFilter(expectedInsertions, falsePositiveRate);
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        rebuild();
+    }
+
+    /**
+     * 吊销令牌，令牌过期后记录自动清除
+     * @param claims 令牌声明
+     */
+    public void revoke(Claims claims) {
+        String jti = claims.getId();
+        if (jti == null || claims.getExpiration() == null) {
+            return;
+        }
+        long expiresAt = claims.getExpiration().getTime();
+        long ttl = expiresAt - System.currentTimeMillis();
+        if (ttl <= 0) {
+            return;
+        }
+        addLocal(jti);
+        confirmed.put(jti, expiresAt);
+        try {
+            stringRedisTemplate.opsForValue().set(KEY_PREFIX + jti, String.valueOf(expiresAt), ttl, TimeUnit.MILLISECONDS);
+            stringRedisTemplate.convertAndSend(CHANNEL, jti);
+        } catch (Exception e) {
+            log.error("写入令牌吊销记录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 检查令牌是否已吊销
+     * @param claims 令牌声明
+     * @return 是否已吊销
+     */
+    public boolean isRevoked(Claims claims) {
+        String jti = claims.getId();
+        // 引入jti之前签发的令牌无法单独吊销
+        if (jti == null || !filter.mightContain(jti)) {
+            return false;
+        }
+        if (confirmed.containsKey(jti)) {
+            return true;
+        }
+        try {
+            boolean revoked = Boolean.TRUE.equals(stringRedisTemplate.hasKey(KEY_PREFIX + jti));
+            if (revoked) {
+                confirmed.put(jti, claims.getExpiration().getTime());
+            }
+            return revoked;
+        } catch (Exception e) {
+            // 布隆过滤器命中且无法确认时按已吊销处理
+            log.error("确认令牌吊销状态失败: {}", e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * 接收其他节点发布的吊销通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        addLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 每小时从Redis重建布隆过滤器，丢弃已过期的jti
+     */
+    @Scheduled(fixedDelay = 3600000, initialDelay = 3600000)
+    public void rebuild() {
+        synchronized (this) {
+            addedDuringRebuild = new ArrayList<>();
+        }
+        try {
+            List<String> jtis = new ArrayList<>();
+            ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build();
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                cursor.forEachRemaining(key -> jtis.add(key.substring(KEY_PREFIX.length())));
+            }
+            CountingBloomFilter rebuilt = new CountingBloomFilter(
+                    Math.max(expectedInsertions, jtis.size() * 2L), falsePositiveRate);
+            jtis.forEach(rebuilt::add);
+            synchronized (this) {
+                addedDuringRebuild.forEach(rebuilt::add);
+                filter = rebuilt;
+            }
+            log.info("令牌吊销布隆过滤器重建完成，已吊销令牌数: {}", jtis.size());
+        } catch (Exception e) {
+            log.error("令牌吊销布隆过滤器重建失败: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                addedDuringRebuild = null;
+            }
+        }
+        long now = System.currentTimeMillis();
+        confirmed.values().removeIf(expiresAt -> expiresAt < now);
+    }
+
+    private synchronized void addLocal(String jti) {
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.add(jti);
+        }
+        filter.add(jti);
+    }
+}
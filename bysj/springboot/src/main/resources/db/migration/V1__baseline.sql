@@ -0,0 +1,71 @@
+-- 基线结构，与引入版本迁移前的线上库一致；已有库以此版本为基线，不会执行本脚本
+
+-- 门店信息表
+CREATE TABLE stores (
+    store_id INT AUTO_INCREMENT PRIMARY KEY,           -- 门店ID
+    store_name VARCHAR(100) NOT NULL,                  -- 门店名称
+    store_address VARCHAR(255)                         -- 门店地址
+);
+
+-- 棋牌房间信息表
+CREATE TABLE rooms (
+    room_id INT AUTO_INCREMENT PRIMARY KEY,           -- 房间ID
+    room_name VARCHAR(100) NOT NULL,                   -- 房间名称
+    room_type VARCHAR(50),                             -- 房间类型（如麻将、扑克等）
+    max_players INT,                                   -- 房间最大玩家数
+    min_players INT,                                   -- 房间最小玩家数
+    price_per_hour DECIMAL(10, 2) NOT NULL,            -- 每小时单价
+    description TEXT,                                  -- 房间描述
+    image_path VARCHAR(255),                           -- 图片路径或连接
+    status ENUM('空闲', '使用中') DEFAULT '空闲',      -- 房间状态
+    password INT,                                      -- 房间密码
+    store_id INT                                       -- 所属门店ID
+);
+
+-- 用户信息表
+CREATE TABLE users (
+    user_id INT AUTO_INCREMENT PRIMARY KEY,         -- 用户ID
+    username VARCHAR(50) NOT NULL UNIQUE,           -- 用户名
+    password VARCHAR(255) NOT NULL,                 -- 密码
+    email VARCHAR(100),                             -- 邮箱
+    phone VARCHAR(20),                              -- 电话
+    registration_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,  -- 注册时间
+    last_login TIMESTAMP NULL,                      -- 上次登录时间
+    status ENUM('登录', '未登录') DEFAULT '未登录',  -- 账户状态
+    balance DECIMAL(10, 2) DEFAULT 0                -- 余额
+);
+
+-- 管理员信息表
+CREATE TABLE admins (
+    admin_id INT AUTO_INCREMENT PRIMARY KEY,   -- 管理员ID
+    username VARCHAR(50) NOT NULL UNIQUE,       -- 管理员用户名
+    password VARCHAR(255) NOT NULL,             -- 密码
+    role ENUM('super_admin', 'admin') DEFAULT 'admin',  -- 角色类型
+    last_login TIMESTAMP NULL,                  -- 上次登录时间
+    status ENUM('登录', '未登录') DEFAULT '未登录',  -- 状态
+    store_id INT                                -- 管理的门店ID
+);
+
+-- 使用记录表
+CREATE TABLE usage_records (
+    record_id INT AUTO_INCREMENT PRIMARY KEY,    -- 记录ID
+    room_id INT,                                 -- 房间ID，关联到rooms表
+    user_id INT,                                 -- 用户ID，关联到用户表
+    start_time DATETIME NOT NULL,                -- 开始时间
+    end_time DATETIME NOT NULL,                  -- 结束时间
+    total_price DECIMAL(10, 2) NOT NULL,         -- 总费用
+    store_id INT,                                -- 门店ID
+    FOREIGN KEY (room_id) REFERENCES rooms(room_id), -- 外键关联房间ID
+    FOREIGN KEY (user_id) REFERENCES users(user_id)  -- 外键关联用户ID
+);
+
+-- 支付记录表
+CREATE TABLE payments (
+    payment_id INT AUTO_INCREMENT PRIMARY KEY,   -- 支付ID
+    user_id INT,                                 -- 用户ID
+    payment_method VARCHAR(20),                  -- 支付方式
+    amount DECIMAL(10, 2) NOT NULL,              -- 支付金额
+    payment_status VARCHAR(20),                  -- 支付状态
+    payment_time DATETIME,                       -- 支付时间
+    alipay_transaction_id VARCHAR(64)            -- 支付宝交易号
+);
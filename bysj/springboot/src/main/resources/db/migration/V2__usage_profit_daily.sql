@@ -0,0 +1,19 @@
+-- 盈利日汇总表，按 日期 × 门店 × 房间 汇总使用记录，随使用记录的增删改在同一事务中增量维护
+CREATE TABLE IF NOT EXISTS usage_profit_daily (
+    stat_date DATE NOT NULL,                        -- 日期（使用记录开始时间所在日）
+    store_id INT NOT NULL DEFAULT 0,                -- 门店ID，记录无门店时为0
+    room_id INT NOT NULL DEFAULT 0,                 -- 房间ID，记录无房间时为0
+    total_profit DECIMAL(14, 2) NOT NULL DEFAULT 0, -- 总收入
+    record_count INT NOT NULL DEFAULT 0,            -- 记录数
+    PRIMARY KEY (stat_date, store_id, room_id),
+    KEY idx_store_date (store_id, stat_date)
+);
+
+-- 从历史记录回填，汇总表已按建表.sql手工创建过时以重新汇总的结果覆盖
+INSERT INTO usage_profit_daily(stat_date, store_id, room_id, total_profit, record_count)
+SELECT DATE(start_time), COALESCE(store_id, 0), COALESCE(room_id, 0), SUM(total_price), COUNT(*)
+FROM usage_records
+GROUP BY DATE(start_time), COALESCE(store_id, 0), COALESCE(room_id, 0)
+ON DUPLICATE KEY UPDATE
+total_profit = VALUES(total_profit),
+record_count = VALUES(record_count);
@@ -0,0 +1,18 @@
+-- 使用记录：按用户查询并按开始时间过滤
+CREATE INDEX idx_usage_user_start ON usage_records (user_id, start_time);
+-- 使用记录：按房间查询重叠预订和最近结束时间
+CREATE INDEX idx_usage_room_end ON usage_records (room_id, end_time);
+-- 使用记录：按门店查询
+CREATE INDEX idx_usage_store_start ON usage_records (store_id, start_time);
+-- 使用记录：加载进行中和未开始的预订
+CREATE INDEX idx_usage_end ON usage_records (end_time);
+
+-- 房间：按门店和状态查询
+CREATE INDEX idx_rooms_store_status ON rooms (store_id, status);
+-- 房间：不限门店按状态查询
+CREATE INDEX idx_rooms_status ON rooms (status);
+
+-- 支付记录：按用户查询并按支付时间排序
+CREATE INDEX idx_payments_user_time ON payments (user_id, payment_time);
+-- 支付记录：支付宝回调按交易号查询
+CREATE INDEX idx_payments_alipay_trade ON payments (alipay_transaction_id);
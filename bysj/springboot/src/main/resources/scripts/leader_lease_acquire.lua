@@ -0,0 +1,20 @@
+-- 获取或续期领导者租约
+-- KEYS[1] 租约键，值为 节点标识|防护令牌
+-- KEYS[2] 防护令牌计数键
+-- ARGV[1] 节点标识
+-- ARGV[2] 租约时长（毫秒）
+-- 返回 本节点持有租约时为防护令牌，否则为-1
+local current = redis.call('GET', KEYS[1])
+if current then
+    local separator = string.find(current, '|', 1, true)
+    if separator and string.sub(current, 1, separator - 1) == ARGV[1] then
+        redis.call('PEXPIRE', KEYS[1], ARGV[2])
+        return tonumber(string.sub(current, separator + 1))
+    end
+    return -1
+end
+
+-- 租约空闲时抢占，每次易主都发放更大的防护令牌
+local token = redis.call('INCR', KEYS[2])
+redis.call('SET', KEYS[1], ARGV[1] .. '|' .. token, 'PX', ARGV[2])
+return token
@@ -0,0 +1,7 @@
+-- 释放领导者租约，仅当租约仍由本节点以同一防护令牌持有时删除
+-- KEYS[1] 租约键
+-- ARGV[1] 节点标识|防护令牌
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
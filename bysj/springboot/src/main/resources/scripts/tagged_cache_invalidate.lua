@@ -0,0 +1,13 @@
+-- 按标签失效缓存，删除标签集合中登记的所有缓存键及标签集合本身
+-- KEYS 标签集合键
+-- 返回删除的缓存键数量
+local deleted = 0
+for _, tag in ipairs(KEYS) do
+    local members = redis.call('SMEMBERS', tag)
+    -- 分批删除，避免unpack参数过多
+    for i = 1, #members, 1000 do
+        deleted = deleted + redis.call('DEL', unpack(members, i, math.min(i + 999, #members)))
+    end
+    redis.call('DEL', tag)
+end
+return deleted
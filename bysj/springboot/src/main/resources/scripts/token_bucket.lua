@@ -0,0 +1,43 @@
+-- 令牌桶限流
+-- KEYS[1] 令牌桶键
+-- ARGV[1] 桶容量
+-- ARGV[2] 每毫秒补充的令牌数
+-- ARGV[3] 本次请求消耗的令牌数
+-- 返回 {是否放行(1/0), 剩余令牌数, 需等待的毫秒数}
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- 使用Redis服务器时间，避免各节点时钟不一致
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if tokens == nil or ts == nil then
+    tokens = capacity
+    ts = now
+end
+
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+
+local allowed = 0
+local retry = 0
+if tokens >= requested then
+    tokens = tokens - requested
+    allowed = 1
+else
+    retry = math.ceil((requested - tokens) / rate)
+end
+
+redis.call('HSET', key, 'tokens', tostring(tokens), 'ts', tostring(now))
+-- 桶补满所需时间之后即可丢弃，下次按满桶处理
+redis.call('PEXPIRE', key, math.ceil(capacity / rate) + 1000)
+
+return {allowed, math.floor(tokens), retry}
@@ -0,0 +1,80 @@
+package com.example.springboot.config;
+
+import java.util.List;
+
+/**
+ * 重构前JwtAuthenticationFilter中的路由判断链，仅用于对比测试和基准测试
+ */
+final class LegacyRouteChain {
+
+    private static final List<String> ANONYMOUS_PATHS = List.of(
+            "/api/user/login",
+            "/api/user/register",
+            "/api/admins/login",
+            "/api/user/check-username",
+            "/api/user/verify-phone",
+            "/api/user/reset-password",
+            "/api/payments/alipay/*/status"
+    );
+
+    private LegacyRouteChain() {
+    }
+
+    static RouteRealmClassifier.Realm classify(String requestUri, String method) {
+        if (isAnonymousPath(requestUri)) {
+            return RouteRealmClassifier.Realm.ANONYMOUS;
+        }
+        // 原实现在用户不存在时会对这些路径改用adminDetailsService
+        if (requestUri.equals("/api/stores") ||
+                requestUri.equals("/api/rooms") ||
+                requestUri.startsWith("/api/rooms/available") ||
+                requestUri.startsWith("/api/rooms/store/") ||
+                requestUri.equals("/api/usage-records") ||
+                requestUri.matches("/api/rooms/\\d+/status")) {
+            return RouteRealmClassifier.Realm.SHARED;
+        }
+        if (requestUri.startsWith("/api/alipay/pay/") || requestUri.startsWith("/api/alipay/status/") || requestUri.equals("/api/payments/notify")) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.startsWith("/api/payments")) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.equals("/api/user/self")) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.startsWith("/api/usage-records/self")) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.startsWith("/api/usage-records/user/")) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.equals("/api/usage-records") && "POST".equals(method)) {
+            return RouteRealmClassifier.Realm.USER;
+        } else if (requestUri.startsWith("/api/admins")) {
+            return RouteRealmClassifier.Realm.ADMIN;
+        } else if (requestUri.equals("/api/user/all") ||
+                requestUri.equals("/api/user") ||
+                (requestUri.startsWith("/api/rooms/") &&
+                        !requestUri.startsWith("/api/rooms/available") &&
+                        !requestUri.startsWith("/api/rooms/store/") &&
+                        !requestUri.endsWith("/status") &&
+                        !requestUri.matches("/api/rooms/\\d+/status"))) {
+            return RouteRealmClassifier.Realm.ADMIN;
+        } else if (requestUri.startsWith("/api/usage-records") &&
+                !requestUri.startsWith("/api/usage-records/self") &&
+                !requestUri.startsWith("/api/usage-records/user/") &&
+                !requestUri.equals("/api/usage-records")) {
+            return RouteRealmClassifier.Realm.ADMIN;
+        }
+        return RouteRealmClassifier.Realm.USER;
+    }
+
+    private static boolean isAnonymousPath(String requestUri) {
+        for (String path : ANONYMOUS_PATHS) {
+            if (path.contains("*")) {
+                String pattern = path.replace("*", ".*");
+                if (requestUri.matches(pattern)) {
+                    return true;
+                }
+            } else if (requestUri.equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
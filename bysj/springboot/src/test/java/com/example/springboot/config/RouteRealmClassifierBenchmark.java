@@ -0,0 +1,56 @@
+package com.example.springboot.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由分类器与原判断链的JMH基准测试
+ * 运行方式：在IDE中直接运行main方法，或 mvn test-compile 后以测试classpath执行本类
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteRealmClassifierBenchmark {
+
+    private final RouteRealmClassifier classifier = new RouteRealmClassifier();
+
+    private final String[] paths = RouteRealmClassifierTest.PATHS;
+
+    @Benchmark
+    public void legacyChain(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(LegacyRouteChain.classify(path, "GET"));
+        }
+    }
+
+    @Benchmark
+    public void classifier(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(classifier.classify(path));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RouteRealmClassifierBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.springboot.config;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RouteRealmClassifierTest {
+
+    static final String[] PATHS = {
+            "/api/user/login",
+            "/api/user/register",
+            "/api/admins/login",
+            "/api/user/check-username",
+            "/api/user/verify-phone",
+            "/api/user/reset-password",
+            "/api/payments/alipay/2024123122001/status",
+            "/api/alipay/pay/15",
+            "/api/alipay/status/15",
+            "/api/payments/notify",
+            "/api/payments",
+            "/api/payments/12",
+            "/api/payments/user/3",
+            "/api/user/self",
+            "/api/user/info",
+            "/api/user/logout",
+            "/api/user/all",
+            "/api/user",
+            "/api/user/7",
+            "/api/user/update-balance",
+            "/api/usage-records",
+            "/api/usage-records/self",
+            "/api/usage-records/user/3",
+            "/api/usage-records/user",
+            "/api/usage-records/12",
+            "/api/usage-records/room/4",
+            "/api/usage-records/store/2",
+            "/api/usage-records/daily-profit",
+            "/api/stores",
+            "/api/stores/2",
+            "/api/rooms",
+            "/api/rooms/available",
+            "/api/rooms/store/2",
+            "/api/rooms/store",
+            "/api/rooms/15",
+            "/api/rooms/15/status",
+            "/api/rooms/abc/status",
+            "/api/admins",
+            "/api/admins/3",
+            "/api/admins/info",
+            "/api/admins/logout/3",
+            "/swagger-ui/index.html",
+            // 末尾和连续的/
+            "//api/user/login",
+            "/api/user/login/",
+            "/api/user//login",
+            "/api/admins/login/",
+            "/api/payments/",
+            "/api/rooms/",
+            "/api/rooms/store/",
+            "/api/rooms/store//2",
+            "/api/usage-records/",
+            "/api/stores/",
+            "/api/rooms/15/status/",
+            "/",
+            ""
+    };
+
+    private final RouteRealmClassifier classifier = new RouteRealmClassifier();
+
+    @Test
+    void classifiesLikeLegacyChain() {
+        for (String path : PATHS) {
+            assertEquals(LegacyRouteChain.classify(path, "GET"), classifier.classify(path), path);
+        }
+    }
+
+    @Test
+    void emptySegmentsNeverMatchAnonymousPaths() {
+        String[] paths = {
+                "//api/user/login",
+                "/api/user/login/",
+                "/api//user/register",
+                "/api/admins/login//",
+                "/api/payments/alipay//status",
+                "/api/payments/alipay/2024123122001/status/"
+        };
+        for (String path : paths) {
+            assertFalse(classifier.isAnonymous(path), path);
+        }
+    }
+
+    @Test
+    void sharedPathsFallBackForEveryMethod() {
+        // 原实现中POST /api/usage-records虽然先走userDetailsService，但同样会回退到adminDetailsService
+        assertEquals(RouteRealmClassifier.Realm.SHARED, classifier.classify("/api/usage-records"));
+        assertEquals(RouteRealmClassifier.Realm.SHARED, LegacyRouteChain.classify("/api/usage-records", "POST"));
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.springboot.mapper;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对所有Mapper语句执行EXPLAIN，出现全表扫描即失败
+ * 需要一个可随意写入的MySQL库，通过系统属性指定，未指定时跳过：
+ * mvn test -Dtest=MapperExplainTest -Dexplain.jdbc-url=jdbc:mysql://localhost:3306/explain_db -Dexplain.username=root -Dexplain.password=root
+ * 测试先执行版本迁移，库为空时写入模拟数据并更新统计信息，使执行计划接近线上
+ */
+@EnabledIfSystemProperty(named = "explain.jdbc-url", matches = ".+")
+class MapperExplainTest {
+
+    // 有意读取整张表的语句
+    private static final Set<String> FULL_SCAN_ALLOWED = Set.of(
+            "AdminMapper.findAll",
+            "PaymentMapper.findAll",
+            "RoomMapper.findAll",
+            "StoreMapper.findAll",
+            "UsageRecordMapper.findAll",
+            "UserMapper.findAll",
+            // 重建汇总按开始时间全表汇总，只在回填时执行
+            "UsageRecordMapper.rebuildDailyProfit",
+            // 启动和定时核对时加载营收列存
+            "UsageRecordMapper.streamDailyProfit"
+    );
+
+    private static String url;
+    private static String username;
+    private static String password;
+
+    @BeforeAll
+    static void migrateAndSeed() throws SQLException {
+        url = System.getProperty("explain.jdbc-url");
+        username = System.getProperty("explain.username", "root");
+        password = System.getProperty("explain.password", "");
+        Flyway.configure()
+                .dataSource(url, username, password)
+                .locations("classpath:db/migration")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+        try (Connection connection = DriverManager.getConnection(url, username, password)) {
+            if (count(connection, "usage_records") == 0) {
+                seed(connection);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE TABLE stores, rooms, users, admins, usage_records, payments, usage_profit_daily");
+            }
+        }
+    }
+
+    @Test
+    void noMapperStatementScansWholeTable() throws Exception {
+        Configuration configuration = new Configuration();
+        configuration.getTypeAliasRegistry().registerAliases("com.example.springboot.model");
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath:mapper/*.xml")) {
+            try (InputStream in = resource.getInputStream()) {
+                new XMLMapperBuilder(in, configuration, resource.toString(), configuration.getSqlFragments()).parse();
+            }
+        }
+
+        // getMappedStatements同时包含全名和短名，按全名去重
+        Map<String, MappedStatement> statements = new TreeMap<>();
+        for (Object value : configuration.getMappedStatements()) {
+            if (value instanceof MappedStatement statement) {
+                statements.put(statement.getId(), statement);
+            }
+        }
+
+        List<String> failures = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(url, username, password)) {
+            for (MappedStatement statement : statements.values()) {
+                String name = statement.getId().substring(statement.getId().lastIndexOf('.', statement.getId().lastIndexOf('.') - 1) + 1);
+                Map<String, Object> parameters = sampleParameters();
+                BoundSql boundSql = statement.getBoundSql(parameters);
+                String sql = boundSql.getSql();
+                // 不带查询的插入语句没有扫描
+                if (statement.getSqlCommandType() == SqlCommandType.INSERT && !sql.toUpperCase().contains("SELECT")) {
+                    continue;
+                }
+                for (String scan : fullScans(connection, sql, boundSql, parameters)) {
+                    if (!FULL_SCAN_ALLOWED.contains(name)) {
+                        failures.add(name + " 全表扫描 " + scan);
+                    }
+                }
+            }
+        }
+        assertTrue(failures.isEmpty(), String.join("\n", failures));
+    }
+
+    // 执行EXPLAIN，返回访问类型为ALL的表
+    private static List<String> fullScans(Connection connection, String sql, BoundSql boundSql,
+                                          Map<String, Object> parameters) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            List<ParameterMapping> mappings = boundSql.getParameterMappings();
+            for (int i = 0; i < mappings.size(); i++) {
+                String property = mappings.get(i).getProperty();
+                Object value = boundSql.hasAdditionalParameter(property)
+                        ? boundSql.getAdditionalParameter(property) : parameters.get(property);
+                explain.setObject(i + 1, value);
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    // <derived>、<union>等临时结果不是实际的表
+                    if ("ALL".equals(rs.getString("type")) && table != null && !table.startsWith("<")) {
+                        tables.add(table + "(rows=" + rs.getLong("rows") + ")");
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    // 所有语句共用的示例参数，按属性名取值，缺少的属性为null
+    private static Map<String, Object> sampleParameters() {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("roomId", 1);
+        parameters.put("userId", 1);
+        parameters.put("storeId", 1);
+        parameters.put("recordId", 1);
+        parameters.put("paymentId", 1);
+        parameters.put("adminId", 1);
+        parameters.put("username", "user1");
+        parameters.put("status", "使用中");
+        parameters.put("expected", "空闲");
+        parameters.put("password", 1234);
+        parameters.put("paymentStatus", "已支付");
+        parameters.put("alipayTransactionId", "T1");
+        parameters.put("afterId", 0);
+        parameters.put("limit", 10);
+        parameters.put("offset", 0);
+        parameters.put("startDate", "2024-03-01");
+        parameters.put("endDate", "2024-03-31");
+        parameters.put("year", 2024);
+        parameters.put("month", 3);
+        parameters.put("time", now);
+        parameters.put("now", now);
+        parameters.put("startTime", new Timestamp(now.getTime() - 3600000));
+        parameters.put("endTime", now);
+        parameters.put("amount", 10.0);
+        parameters.put("count", 1);
+        return parameters;
+    }
+
+    private static long count(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // 20个门店、2000个房间、5000个用户、三年内的10万条使用记录和2万条支付记录
+    private static void seed(Connection connection) throws SQLException {
+        Random random = new Random(1);
+        connection.setAutoCommit(false);
+        batch(connection, "INSERT INTO stores(store_id, store_name) VALUES(?, ?)", 20,
+                (ps, i) -> { ps.setInt(1, i + 1); ps.setString(2, "门店" + (i + 1)); });
+        batch(connection, "INSERT INTO rooms(room_id, room_name, price_per_hour, status, store_id) VALUES(?, ?, 30, ?, ?)", 2000,
+                (ps, i) -> {
+                    ps.setInt(1, i + 1);
+                    ps.setString(2, "房间" + (i + 1));
+                    ps.setString(3, random.nextInt(10) == 0 ? "使用中" : "空闲");
+                    ps.setInt(4, i % 20 + 1);
+                });
+        batch(connection, "INSERT INTO users(user_id, username, password) VALUES(?, ?, 'x')", 5000,
+                (ps, i) -> { ps.setInt(1, i + 1); ps.setString(2, "user" + (i + 1)); });
+        long base = System.currentTimeMillis() - 3L * 365 * 24 * 3600000;
+        batch(connection, "INSERT INTO usage_records(room_id, user_id, start_time, end_time, total_price, store_id) VALUES(?, ?, ?, ?, ?, ?)", 100000,
+                (ps, i) -> {
+                    int roomId = random.nextInt(2000) + 1;
+                    long start = base + (long) random.nextInt(3 * 365 * 24) * 3600000;
+                    ps.setInt(1, roomId);
+                    ps.setInt(2, random.nextInt(5000) + 1);
+                    ps.setTimestamp(3, new Timestamp(start));
+                    ps.setTimestamp(4, new Timestamp(start + (1 + random.nextInt(4)) * 3600000L));
+                    ps.setDouble(5, 30 + random.nextInt(90));
+                    ps.setInt(6, (roomId - 1) % 20 + 1);
+                });
+        batch(connection, "INSERT INTO payments(user_id, payment_method, amount, payment_status, payment_time, alipay_transaction_id) VALUES(?, 'alipay', 50, '已支付', ?, ?)", 20000,
+                (ps, i) -> {
+                    ps.setInt(1, random.nextInt(5000) + 1);
+                    ps.setTimestamp(2, new Timestamp(base + (long) random.nextInt(3 * 365 * 24) * 3600000));
+                    ps.setString(3, "T" + i);
+                });
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO usage_profit_daily(stat_date, store_id, room_id, total_profit, record_count) "
+                    + "SELECT DATE(start_time), COALESCE(store_id, 0), COALESCE(room_id, 0), SUM(total_price), COUNT(*) "
+                    + "FROM usage_records GROUP BY DATE(start_time), COALESCE(store_id, 0), COALESCE(room_id, 0)");
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+    }
+
+    private static void batch(Connection connection, String sql, int rows, RowWriter writer) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(ps, i);
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(PreparedStatement ps, int row) throws SQLException;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.springboot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntervalTreeTest {
+
+    @Test
+    void adjacentIntervalsDoNotOverlap() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.add(10, 20, 1, 1);
+        tree.add(30, 40, 2, 2);
+
+        assertFalse(tree.overlapsAny(20, 30));
+        assertFalse(tree.overlapsAny(0, 10));
+        assertTrue(tree.overlapsAny(19, 21));
+        assertEquals(List.of(1, 2), tree.overlapping(15, 35));
+        assertThrows(IllegalArgumentException.class, () -> tree.add(5, 5, 3, 3));
+    }
+
+    @Test
+    void removeByStartAndId() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.add(10, 20, 1, 1);
+        tree.add(10, 15, 2, 2);
+
+        assertFalse(tree.add(10, 50, 1, 9));
+        assertTrue(tree.remove(10, 1));
+        assertFalse(tree.remove(10, 1));
+        assertEquals(1, tree.size());
+        assertFalse(tree.overlapsAny(15, 20));
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(42);
+        IntervalTree<long[]> tree = new IntervalTree<>();
+        List<long[]> intervals = new ArrayList<>();
+        for (int round = 0; round < 5000; round++) {
+            if (!intervals.isEmpty() && random.nextInt(3) == 0) {
+                long[] removed = intervals.remove(random.nextInt(intervals.size()));
+                assertTrue(tree.remove(removed[0], removed[2]));
+            } else {
+                long start = random.nextInt(10000);
+                long[] added = {start, start + 1 + random.nextInt(200), round};
+                assertTrue(tree.add(added[0], added[1], added[2], added));
+                intervals.add(added);
+            }
+            long start = random.nextInt(10000);
+            long end = start + 1 + random.nextInt(300);
+            List<long[]> expected = new ArrayList<>();
+            for (long[] interval : intervals) {
+                if (interval[0] < end && start < interval[1]) {
+                    expected.add(interval);
+                }
+            }
+            List<long[]> actual = tree.overlapping(start, end);
+            assertEquals(expected.size(), actual.size());
+            assertEquals(!expected.isEmpty(), tree.overlapsAny(start, end));
+            assertEquals(intervals.size(), tree.size());
+        }
+    }
+
+    @Test
+    void firstGapMatchesBruteForce() {
+        Random random = new Random(7);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<long[]> intervals = new ArrayList<>();
+        for (int round = 0; round < 300; round++) {
+            long start = random.nextInt(5000);
+            long[] added = {start, start + 1 + random.nextInt(100)};
+            tree.add(added[0], added[1], round, round);
+            intervals.add(added);
+        }
+        for (int query = 0; query < 2000; query++) {
+            long from = random.nextInt(5000);
+            long to = from + random.nextInt(1000);
+            long length = 1 + random.nextInt(60);
+            long expected = -1;
+            // 最早的空闲时间必定从from或某个区间的终点开始
+            List<Long> candidates = new ArrayList<>();
+            candidates.add(from);
+            for (long[] interval : intervals) {
+                if (interval[1] > from) {
+                    candidates.add(interval[1]);
+                }
+            }
+            for (long candidate : candidates) {
+                if (candidate + length > to || (expected >= 0 && candidate >= expected)) {
+                    continue;
+                }
+                boolean free = true;
+                for (long[] interval : intervals) {
+                    if (interval[0] < candidate + length && candidate < interval[1]) {
+                        free = false;
+                        break;
+                    }
+                }
+                if (free) {
+                    expected = candidate;
+                }
+            }
+            assertEquals(expected, tree.firstGap(from, to, length));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.springboot.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RevenueColumnsTest {
+
+    @Test
+    void rangeSumsPerStoreAndRoom() {
+        RevenueColumns columns = new RevenueColumns(100, false);
+        columns.add(100, 1, 10, 3000, 1);
+        columns.add(102, 1, 11, 4500, 1);
+        columns.add(102, 2, 20, 6000, 2);
+
+        assertEquals(13500, columns.revenue(RevenueColumns.TOTAL, 100, 102));
+        assertEquals(4, columns.sessions(RevenueColumns.TOTAL, 90, 200));
+        assertEquals(7500, columns.revenue(columns.findStoreColumn(1), 100, 102));
+        assertEquals(4500, columns.revenue(columns.findRoomColumn(1, 11), 101, 102));
+        assertEquals(0, columns.revenue(columns.findRoomColumn(1, 10), 101, 102));
+        assertEquals(-1, columns.findRoomColumn(2, 10));
+
+        // 扣除，以及早于第一天的写入
+        columns.add(102, 2, 20, -6000, -2);
+        columns.add(95, 2, 20, 1000, 1);
+        assertEquals(95, columns.firstDay());
+        assertEquals(1000, columns.revenue(columns.findStoreColumn(2), 0, 1000));
+        assertEquals(8500, columns.revenue(RevenueColumns.TOTAL, 95, 102));
+        assertEquals(7500, columns.revenue(RevenueColumns.TOTAL, 96, 102));
+    }
+
+    @Test
+    void matchesBruteForceAfterLoadingAndAppending() {
+        Random random = new Random(7);
+        int span = 400;
+        long[][] expected = new long[3][span];
+        RevenueColumns columns = new RevenueColumns(1000, true);
+        for (int i = 0; i < 2000; i++) {
+            int day = random.nextInt(span / 2);
+            int store = random.nextInt(3);
+            long cents = random.nextInt(10000);
+            columns.add(1000 + day, store, 1, cents, 1);
+            expected[store][day] += cents;
+        }
+        columns.accumulate();
+        for (int i = 0; i < 500; i++) {
+            int day = random.nextInt(span);
+            int store = random.nextInt(3);
+            long cents = random.nextInt(10000) - 3000;
+            columns.add(1000 + day, store, 1, cents, 1);
+            expected[store][day] += cents;
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            int from = random.nextInt(span);
+            int to = from + random.nextInt(span - from);
+            long total = 0;
+            for (int store = 0; store < 3; store++) {
+                long sum = 0;
+                for (int day = from; day <= to; day++) {
+                    sum += expected[store][day];
+                }
+                assertEquals(sum, columns.revenue(columns.findStoreColumn(store), 1000 + from, 1000 + to));
+                assertEquals(sum, columns.revenue(columns.findRoomColumn(store, 1), 1000 + from, 1000 + to));
+                total += sum;
+            }
+            assertEquals(total, columns.revenue(RevenueColumns.TOTAL, 1000 + from, 1000 + to));
+        }
+    }
+}
@@ -1,3 +1,4 @@
+-- 初始建表参考，实际表结构和索引以 springboot/src/main/resources/db/migration 下的版本迁移脚本为准
 
 -- 棋牌房间信息表 (rooms)
 CREATE TABLE rooms (
@@ -44,4 +45,14 @@ CREATE TABLE admins (
     role ENUM('super_admin', 'admin') DEFAULT 'admin',  -- 角色类型
     last_login TIMESTAMP,                       -- 上次登录时间
     status ENUM('登录', '未登录') DEFAULT '未登录'  -- 状态
-);
\ No newline at end of file
+);
+-- 盈利日汇总表，按 日期 × 门店 × 房间 汇总使用记录，随使用记录的增删改在同一事务中增量维护
+CREATE TABLE usage_profit_daily (
+    stat_date DATE NOT NULL,                        -- 日期（使用记录开始时间所在日）
+    store_id INT NOT NULL DEFAULT 0,                -- 门店ID，记录无门店时为0
+    room_id INT NOT NULL DEFAULT 0,                 -- 房间ID，记录无房间时为0
+    total_profit DECIMAL(14, 2) NOT NULL DEFAULT 0, -- 总收入
+    record_count INT NOT NULL DEFAULT 0,            -- 记录数
+    PRIMARY KEY (stat_date, store_id, room_id),
+    KEY idx_store_date (store_id, stat_date)
+);